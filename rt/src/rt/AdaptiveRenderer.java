@@ -0,0 +1,149 @@
+package rt;
+
+import java.util.concurrent.ExecutionException;
+
+import rt.films.VarianceFilm;
+
+/**
+ * Distributes the samples of an image adaptively, such that pixels with a large estimated 
+ * error get more samples than pixels that have already converged.
+ * <p>
+ * The total budget of samples is the same as for uniform sampling, that is, the samples per 
+ * pixel of the scene times the number of pixels. First, every pixel gets a few samples, so 
+ * that the {@link VarianceFilm} can estimate its error. Then, passes of samples are rendered, 
+ * each of which distributes its share of the budget among the pixels whose relative error is 
+ * above a threshold, in proportion to their error. Rendering stops when the budget is used 
+ * up or no pixel is above the threshold anymore.
+ */
+public class AdaptiveRenderer {
+
+	private final Scene scene;
+	private final TileScheduler scheduler;
+	private final VarianceFilm film;
+
+	private int initialSPP = 4;
+	private int samplesPerPass = 4;
+	private int maxSamplesPerPixelPerPass = 64;
+	private float threshold = 0.02f;
+	private float minLuminance = 0.05f;
+
+	private long renderedSamples;
+
+	public AdaptiveRenderer(Scene scene, TileScheduler scheduler, VarianceFilm film)
+	{
+		this.scene = scene;
+		this.scheduler = scheduler;
+		this.film = film;
+	}
+
+	/**
+	 * Sets the number of samples every pixel gets before the error is estimated. At least two 
+	 * samples are needed to estimate the variance.
+	 */
+	public void setInitialSPP(int initialSPP)
+	{
+		this.initialSPP = Math.max(2, initialSPP);
+	}
+
+	/**
+	 * Sets the average number of samples per pixel that are distributed in each pass.
+	 */
+	public void setSamplesPerPass(int samplesPerPass)
+	{
+		this.samplesPerPass = samplesPerPass;
+	}
+
+	/**
+	 * Sets the maximum number of samples a single pixel gets in a pass. This avoids spending 
+	 * the budget of a whole pass on a few pixels whose error is still poorly estimated.
+	 */
+	public void setMaxSamplesPerPixelPerPass(int maxSamplesPerPixelPerPass)
+	{
+		this.maxSamplesPerPixelPerPass = maxSamplesPerPixelPerPass;
+	}
+
+	/**
+	 * Sets the relative standard error below which a pixel is considered converged.
+	 */
+	public void setThreshold(float threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Sets the luminance below which the relative error of a pixel is computed as if its 
+	 * luminance was this value. See {@link VarianceFilm#getRelativeError(int, int, float)}.
+	 */
+	public void setMinLuminance(float minLuminance)
+	{
+		this.minLuminance = minLuminance;
+	}
+
+	/**
+	 * Returns the number of samples rendered so far.
+	 */
+	public long getRenderedSamples()
+	{
+		return renderedSamples;
+	}
+
+	public void render() throws InterruptedException, ExecutionException
+	{
+		int width = film.getWidth();
+		int height = film.getHeight();
+		int nPixels = width * height;
+		long budget = (long) scene.getSPP() * nPixels;
+
+		int spp = Math.min(initialSPP, scene.getSPP());
+		scheduler.start(spp).get();
+		renderedSamples = (long) spp * nPixels;
+
+		int[] pixelSPP = new int[nPixels];
+		float[] error = new float[nPixels];
+		int pass = 1;
+		while(renderedSamples < budget)
+		{
+			// Find the pixels above the threshold
+			double totalError = 0;
+			int active = 0;
+			for(int j=0; j<height; j++)
+			{
+				for(int i=0; i<width; i++)
+				{
+					float e = film.getRelativeError(i, j, minLuminance);
+					if(e > threshold)
+					{
+						error[i + j*width] = e;
+						totalError += e;
+						active++;
+					} else {
+						error[i + j*width] = 0;
+					}
+				}
+			}
+			if(active == 0)
+				break;
+
+			// Distribute the budget of the pass proportionally to the errors
+			long passBudget = Math.min(budget - renderedSamples, (long) samplesPerPass * nPixels);
+			long assigned = 0;
+			for(int k=0; k<nPixels; k++)
+			{
+				int n = 0;
+				if(error[k] > 0 && assigned < passBudget)
+				{
+					n = (int) Math.round(passBudget * (error[k] / totalError));
+					n = (int) Math.min(Math.min(Math.max(1, n), maxSamplesPerPixelPerPass), passBudget - assigned);
+				}
+				pixelSPP[k] = n;
+				assigned += n;
+			}
+
+			scheduler.start(pixelSPP).get();
+			renderedSamples += assigned;
+			pass++;
+			System.out.printf("Pass %d: %d pixels above the threshold, %.2f samples per pixel on average\n", 
+					pass, active, renderedSamples / (float) nPixels);
+		}
+	}
+}
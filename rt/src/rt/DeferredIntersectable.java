@@ -0,0 +1,29 @@
+package rt;
+
+/**
+ * An {@link Intersectable} that splits ray-surface intersection into two phases. The first phase
+ * only determines the ray parameter t and the few values needed to shade the hit later, without
+ * making a {@link HitRecord}. The second phase makes the {@link HitRecord}, with the position, normal,
+ * tangent frame and texture coordinates. Aggregates and acceleration structures run the first phase
+ * for all candidate objects and the second phase only once, for the closest hit.
+ */
+public interface DeferredIntersectable extends Intersectable {
+
+	/**
+	 * First phase of the intersection. Follows the conventions of {@link Intersectable#intersect(Ray)}:
+	 * only intersections within the interval of the ray are reported, and {@link Ray#tmax} is set to
+	 * the t of the hit.
+	 * 
+	 * @param r the ray used for intersection testing
+	 * @param hit receives t, this object and its parameters at the hit, if there is an intersection,
+	 *            and is left unchanged otherwise
+	 * @return true, if there is an intersection
+	 */
+	public boolean intersect(Ray r, PrimitiveHit hit);
+
+	/**
+	 * Second phase of the intersection, makes the {@link HitRecord} for a hit found by
+	 * {@link #intersect(Ray, PrimitiveHit)} with the same ray.
+	 */
+	public HitRecord makeHitRecord(Ray r, PrimitiveHit hit);
+}
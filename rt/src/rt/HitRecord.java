@@ -94,26 +94,22 @@ public class HitRecord  {
 	public void transform(Matrix4f t, Matrix4f inv) {
 
 		if (position != null) {
-			t.transform(position);
+			ScalarVecmath.transformPoint(t, position, position);
 		}
 
 		if (normal != null) {
-			Matrix4f normalMatrix = new Matrix4f(inv);
-			normalMatrix.transpose();
-			normalMatrix.transform(normal);
+			ScalarVecmath.transformNormal(inv, normal);
 			normal.normalize();
 		}
 
 		if (w != null) {
-			t.transform(w);
+			ScalarVecmath.transformVector(t, w, w);
 			w.normalize();
 		}
 
 		if (t1 != null && t2 != null) {
-			Matrix4f normalMatrix = new Matrix4f(inv);
-			normalMatrix.transpose();
-			normalMatrix.transform(t1);
-			normalMatrix.transform(t2);
+			ScalarVecmath.transformNormal(inv, t1);
+			ScalarVecmath.transformNormal(inv, t2);
 			t1.normalize();
 			t2.normalize();
 		}
@@ -130,11 +126,7 @@ public class HitRecord  {
      */
 	public void toTangentSpace(Tuple3f tuple)
 	{
-		Matrix3f m = new Matrix3f();
-		m.setColumn(0, t1);
-		m.setColumn(1, t2);
-		m.setColumn(2, normal);
-		m.transform(tuple);
+		ScalarVecmath.fromFrame(t1, t2, normal, tuple);
 	}
 	
 }
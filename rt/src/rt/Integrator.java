@@ -23,7 +23,9 @@ public interface Integrator {
 	
 	/**
 	 * Generate samples required by the integrator to evaluate 
-	 * light paths. 
+	 * light paths. Integrators may also draw the random numbers 
+	 * along the light paths of these samples from the sampler, 
+	 * see {@link Sampler#startSample(int)}.
 	 * 
 	 * @param sampler the type of sampler to be used to generate the samples
 	 * @param n the desired number of samples
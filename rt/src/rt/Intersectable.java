@@ -11,11 +11,25 @@ public interface Intersectable {
 	 * Implement ray-surface intersection in this method. Implementations of this 
 	 * method need to make and return a {@link HitRecord} correctly, following
 	 * the conventions assumed for {@link HitRecord}.
+	 * Only intersections within the interval {@link Ray#tmin} < t < {@link Ray#tmax}
+	 * are reported, and {@link Ray#tmax} is set to the t of the returned hit.
 	 * 
 	 * @param r the ray used for intersection testing
 	 * @return a hit record, should return null if there is no intersection
 	 */
 	public HitRecord intersect(Ray r);
 
+	/**
+	 * Any-hit test for shadow rays. Returns as soon as any blocking surface is found
+	 * within the interval {@link Ray#tmin} < t < {@link Ray#tmax} of the ray, without
+	 * determining the closest hit and without making a {@link HitRecord}.
+	 * Surfaces whose material does not cast shadows (see {@link Material#castsShadows()})
+	 * do not block the ray. The ray is not modified.
+	 * 
+	 * @param r the ray used for intersection testing
+	 * @return true, if a surface that casts shadows is hit within the interval
+	 */
+	public boolean isOccluded(Ray r);
+
 	public AABoundingBox getBoundingBox();
 }
@@ -3,14 +3,16 @@ package rt;
 import javax.imageio.ImageIO;
 
 import rt.basicscenes.*;
+import rt.films.FilmTile;
+import rt.films.TiledFilm;
+import rt.films.VarianceFilm;
 import rt.testscenes.*;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.awt.image.*;
 import java.io.*;
 
@@ -31,45 +33,200 @@ public class Main {
 	 * The scene to be rendered.
 	 */
 	public static Scene scene = new BDPathtracingBoxSphereGlass();
+
+	/**
+	 * Each task renders a square image block of this size.
+	 */
+	public static int tileSize = 4;
+
+	/**
+	 * The order in which the image blocks are rendered.
+	 */
+	public static TileOrder tileOrder = TileOrder.HILBERT;
+
+	/**
+	 * If positive, the image is rendered progressively in passes of this many samples 
+	 * per pixel, and snapshots are written between the passes. See {@link ProgressiveRenderer}.
+	 */
+	public static int samplesPerPass = 0;
+
+	/**
+	 * When rendering progressively, no pass is started after this many milliseconds.
+	 */
+	public static long timeBudget = Long.MAX_VALUE;
+
+	/**
+	 * When rendering progressively, the minimum time in milliseconds between two snapshots.
+	 */
+	public static long snapshotInterval = 10000;
+
+	/**
+	 * If true and the film of the scene is a {@link VarianceFilm}, the samples are distributed 
+	 * adaptively among the pixels, see {@link AdaptiveRenderer}.
+	 */
+	public static boolean adaptive = false;
+
+	/**
+	 * When sampling adaptively, pixels whose relative standard error is below this value 
+	 * do not get any more samples.
+	 */
+	public static float adaptiveThreshold = 0.02f;
+
+	/**
+	 * If true, the samples of every pixel are derived from the pixel, the sample index and 
+	 * {@link #seed} only, and the image blocks are merged into the film in a fixed order. 
+	 * Rendering the same scene twice then gives bit-identical images, regardless of the 
+	 * number of threads.
+	 */
+	public static boolean deterministic = false;
+
+	/**
+	 * The seed of the samples when rendering deterministically.
+	 */
+	public static long seed = 0;
+
+	/**
+	 * If true, the camera rays of each {@link RenderTask} are intersected with the scene in 
+	 * {@link RayPacket}s before they are integrated, if the integrator and the objects of the 
+	 * scene support it, see {@link PacketIntegrator} and {@link PacketIntersectable}. The 
+	 * packets are traversed without SIMD instructions, which makes them slower than single 
+	 * rays for now, so they are off by default.
+	 */
+	public static boolean rayPackets = false;
+
 	/**
 	 * A render task represents a rectangular image region that is rendered
-	 * by a thread in one chunk.
+	 * by a thread in one chunk. Tasks are lightweight work items; the state
+	 * needed for rendering belongs to the {@link RenderWorker} that renders them.
 	 */
-	static public class RenderTask implements Runnable
+	static public class RenderTask
 	{
 		public int left, right, bottom, top;
-		public Integrator integrator;
-		public Scene scene;
-		public Sampler sampler;
+
+		/**
+		 * The number of samples rendered for each pixel.
+		 */
+		public int spp;
+
+		/**
+		 * If not null, overrides {@link #spp} with an individual number of samples 
+		 * for pixel (i, j), stored at index i + j*width.
+		 */
+		public int[] pixelSPP;
+
+		/**
+		 * If not null, the number of samples already rendered for pixel (i, j), 
+		 * stored at index i + j*width. It is used to continue the sample sequence 
+		 * of each pixel, and it is updated by the task.
+		 */
+		public int[] renderedSPP;
+
+		/**
+		 * If not null after rendering, the samples of the task have been accumulated in 
+		 * this tile, which still needs to be merged into the film.
+		 */
+		public FilmTile tile;
 		
-		public RenderTask(Scene scene, int left, int right, int bottom, int top) 
+		public RenderTask(int left, int right, int bottom, int top, int spp) 
 		{			
-			this.scene = scene;
 			this.left = left;
 			this.right = right;
 			this.bottom = bottom;
 			this.top = top;
+			this.spp = spp;
+		}
+	}
 
-			// The render task has its own sampler and integrator. This way threads don't 
+	/**
+	 * A render worker renders {@link RenderTask}s one after the other. Each thread 
+	 * has its own worker, see {@link TileScheduler}.
+	 */
+	static public class RenderWorker
+	{
+		public Integrator integrator;
+		public Scene scene;
+		public Sampler sampler;
+
+		/*
+		 * The packet of camera rays, and the pixel and the sample index of each ray in it
+		 */
+		private final RayPacket packet = new RayPacket();
+		private final int[] packetPixels = new int[RayPacket.CAPACITY];
+		private final int[] packetSamples = new int[RayPacket.CAPACITY];
+
+		/*
+		 * The samples, camera rays and first hits of each pixel of the task rendered with packets
+		 */
+		private float[][][] pixelSamples;
+		private Ray[][] pixelRays;
+		private HitRecord[][] pixelHits;
+
+		/*
+		 * The film positions of the paths added to a WavefrontIntegrator
+		 */
+		private float[] pathX, pathY;
+		
+		public RenderWorker(Scene scene) 
+		{			
+			this.scene = scene;
+
+			// Each worker thread has its own sampler and integrator. This way threads don't 
 			// compete for access to a shared sampler/integrator, and thread contention
-			// can be reduced. 
+			// can be reduced. They are reused for all tasks rendered by the worker.
 			integrator = scene.getIntegratorFactory().make(scene);
 			sampler = scene.getSamplerFactory().make();
+			if(deterministic)
+				sampler.setSeed(seed);
 		}
 
-		@Override
-		public void run() {
+		public void render(RenderTask task) {
 
-			for(int j=bottom; j<top; j++)
+			Film film = scene.getFilm();
+			FilmTile tile = null;
+			if(film instanceof TiledFilm)
 			{
-				for(int i=left; i<right; i++)
+				// Samples also contribute to pixels of neighboring tasks, so they are 
+				// accumulated in a private tile and merged into the film at the end
+				tile = ((TiledFilm) film).makeTile(task.left, task.right, task.bottom, task.top);
+			}
+
+			if(integrator instanceof WavefrontIntegrator)
+				renderWavefront(task, tile);
+			else if(rayPackets && integrator instanceof PacketIntegrator 
+					&& scene.getIntersectable() instanceof PacketIntersectable)
+				renderPackets(task, tile);
+			else
+				renderPixels(task, tile);
+
+			// Floating point additions depend on the order, so when rendering deterministically 
+			// the tile is left to the caller, which merges the tiles in a fixed order
+			if(tile != null && deterministic)
+				task.tile = tile;
+			else if(tile != null)
+				((TiledFilm) film).mergeTile(tile);
+		}
+
+		/**
+		 * Renders the pixels of the task one after the other.
+		 */
+		private void renderPixels(RenderTask task, FilmTile tile)
+		{
+			Film film = scene.getFilm();
+			for(int j=task.bottom; j<task.top; j++)
+			{
+				for(int i=task.left; i<task.right; i++)
 				{
-					if(!DEBUG_ON || i == DEBUG_PIXEL[0] && j == scene.getFilm().getHeight() - DEBUG_PIXEL[1])
+					int idx = i + j*film.getWidth();
+					int n = numSamples(task, i, j);
+					if(n > 0)
 					{
-						float samples[][] = integrator.makePixelSamples(sampler, scene.getSPP());
+						sampler.startPixel(i, j, firstSample(task, i, j));
+						float samples[][] = integrator.makePixelSamples(sampler, n);
 						// For all samples of the pixel
 						for (int k = 0; k < samples.length; k++)
 						{
+							sampler.startSample(k);
+
 							// Make ray
 							Ray r = scene.getCamera().makeWorldSpaceRay(i, j, samples[k]);
 
@@ -77,54 +234,247 @@ public class Main {
 							Spectrum s = integrator.integrate(r);
 
 							// Write to film
-							scene.getFilm().addSample(i + samples[k][0], j + samples[k][1], s);
+							addSample(i + samples[k][0], j + samples[k][1], s, tile);
 						}
+						if(task.renderedSPP != null)
+							task.renderedSPP[idx] += samples.length;
 					}
 				}
 			}
 		}
+
+		/**
+		 * Renders the task like {@link #renderPixels(RenderTask, FilmTile)}, except that the 
+		 * camera rays of all pixels of the task are intersected with the scene first, in packets 
+		 * of rays through neighboring pixels. Then the integrator continues the rays pixel by 
+		 * pixel. Before that, the sampler is moved back to each pixel with 
+		 * {@link Sampler#resumePixel(int, int, int, float[][])}, such that it continues with the 
+		 * dimensions that follow the samples of the pixel. Samplers that derive the samples from 
+		 * the pixel and the sample index thus give the same image as without packets. The 
+		 * integrator draws from the worker's sampler, which it got with the samples of the first 
+		 * pixel.
+		 */
+		private void renderPackets(RenderTask task, FilmTile tile)
+		{
+			int width = task.right - task.left;
+			int numPixels = width * (task.top - task.bottom);
+			if(pixelSamples == null || pixelSamples.length < numPixels)
+			{
+				pixelSamples = new float[numPixels][][];
+				pixelRays = new Ray[numPixels][];
+				pixelHits = new HitRecord[numPixels][];
+			}
+			float[][][] samples = pixelSamples;
+			Ray[][] rays = pixelRays;
+			HitRecord[][] hits = pixelHits;
+
+			int maxSamples = 0;
+			for(int p = 0; p < numPixels; p++)
+			{
+				int i = task.left + p % width, j = task.bottom + p / width;
+				int n = numSamples(task, i, j);
+				samples[p] = null;
+				if(n > 0)
+				{
+					sampler.startPixel(i, j, firstSample(task, i, j));
+					samples[p] = integrator.makePixelSamples(sampler, n);
+					int m = samples[p].length;
+					if(rays[p] == null || rays[p].length < m)
+					{
+						rays[p] = new Ray[m];
+						hits[p] = new HitRecord[m];
+					}
+					maxSamples = Math.max(maxSamples, m);
+				}
+			}
+
+			// The rays of the same sample index in all pixels form a packet, they are the most coherent
+			packet.clear();
+			for(int k = 0; k < maxSamples; k++)
+			{
+				for(int p = 0; p < numPixels; p++)
+				{
+					if(samples[p] == null || k >= samples[p].length)
+						continue;
+					if(packet.isFull())
+						intersectPacket();
+					rays[p][k] = scene.getCamera().makeWorldSpaceRay(task.left + p % width, task.bottom + p / width, samples[p][k]);
+					packetPixels[packet.size] = p;
+					packetSamples[packet.size] = k;
+					packet.add(rays[p][k]);
+				}
+			}
+			intersectPacket();
+
+			PacketIntegrator packetIntegrator = (PacketIntegrator) integrator;
+			for(int p = 0; p < numPixels; p++)
+			{
+				if(samples[p] == null)
+					continue;
+				int i = task.left + p % width, j = task.bottom + p / width;
+				sampler.resumePixel(i, j, firstSample(task, i, j), samples[p]);
+				for(int k = 0; k < samples[p].length; k++)
+				{
+					sampler.startSample(k);
+					Spectrum s = packetIntegrator.integrate(rays[p][k], hits[p][k]);
+					addSample(i + samples[p][k][0], j + samples[p][k][1], s, tile);
+				}
+				if(task.renderedSPP != null)
+					task.renderedSPP[i + j*scene.getFilm().getWidth()] += samples[p].length;
+			}
+		}
+
+		/**
+		 * Renders the task like {@link #renderPixels(RenderTask, FilmTile)}, except that the 
+		 * camera rays of the samples are added to the {@link WavefrontIntegrator}, which traces 
+		 * the paths of as many samples at once as it can hold. 
+		 */
+		private void renderWavefront(RenderTask task, FilmTile tile)
+		{
+			WavefrontIntegrator wavefront = (WavefrontIntegrator) integrator;
+			int capacity = wavefront.getCapacity();
+			if(pathX == null || pathX.length != capacity)
+			{
+				pathX = new float[capacity];
+				pathY = new float[capacity];
+			}
+
+			int numPaths = 0;
+			for(int j=task.bottom; j<task.top; j++)
+			{
+				for(int i=task.left; i<task.right; i++)
+				{
+					int n = numSamples(task, i, j);
+					if(n == 0)
+						continue;
+					sampler.startPixel(i, j, firstSample(task, i, j));
+					float samples[][] = integrator.makePixelSamples(sampler, n);
+					for (int k = 0; k < samples.length; k++)
+					{
+						if(numPaths == capacity)
+						{
+							tracePaths(numPaths, tile);
+							numPaths = 0;
+						}
+						sampler.startSample(k);
+						wavefront.addPath(scene.getCamera().makeWorldSpaceRay(i, j, samples[k]));
+						pathX[numPaths] = i + samples[k][0];
+						pathY[numPaths] = j + samples[k][1];
+						numPaths++;
+					}
+					if(task.renderedSPP != null)
+						task.renderedSPP[i + j*scene.getFilm().getWidth()] += samples.length;
+				}
+			}
+			tracePaths(numPaths, tile);
+		}
+
+		/**
+		 * Traces the @param numPaths paths added to the {@link WavefrontIntegrator}, and writes 
+		 * their contributions to the film.
+		 */
+		private void tracePaths(int numPaths, FilmTile tile)
+		{
+			if(numPaths == 0)
+				return;
+			Spectrum[] s = ((WavefrontIntegrator) integrator).tracePaths();
+			for(int m = 0; m < numPaths; m++)
+			{
+				addSample(pathX[m], pathY[m], s[m], tile);
+			}
+		}
+
+		/**
+		 * Intersects the rays in the packet with the scene, stores their hits and empties the packet.
+		 */
+		private void intersectPacket()
+		{
+			if(packet.size == 0)
+				return;
+			((PacketIntersectable) scene.getIntersectable()).intersect(packet);
+			for(int m = 0; m < packet.size; m++)
+			{
+				int p = packetPixels[m], k = packetSamples[m];
+				pixelRays[p][k].tmax = packet.tmax[m];
+				pixelHits[p][k] = packet.hits[m];
+			}
+			packet.clear();
+		}
+
+		/**
+		 * Returns the number of samples of pixel (i, j) in the task, 0 if the pixel is skipped.
+		 */
+		private int numSamples(RenderTask task, int i, int j)
+		{
+			if(DEBUG_ON && !(i == DEBUG_PIXEL[0] && j == scene.getFilm().getHeight() - DEBUG_PIXEL[1]))
+				return 0;
+			return task.pixelSPP != null ? task.pixelSPP[i + j*scene.getFilm().getWidth()] : task.spp;
+		}
+
+		private int firstSample(RenderTask task, int i, int j)
+		{
+			return task.renderedSPP != null ? task.renderedSPP[i + j*scene.getFilm().getWidth()] : 0;
+		}
+
+		private void addSample(float x, float y, Spectrum s, FilmTile tile)
+		{
+			if(tile != null)
+				tile.addSample(x, y, s);
+			else
+				scene.getFilm().addSample(x, y, s);
+		}
 	}
 	
 	public static void main(String[] args) throws InterruptedException, ExecutionException, FileNotFoundException, UnsupportedEncodingException
 	{			
-		int taskSize = 4;	// Each task renders a square image block of this size
 		int nThreads = Runtime.getRuntime().availableProcessors();	// Number of threads to be used for rendering
-		int width = scene.getFilm().getWidth();
-		int height = scene.getFilm().getHeight();
 
 		scene.prepare();
 		
-		int nTasks = (int)(Math.ceil(width/(double)taskSize) * Math.ceil(height/(double)taskSize));
-		//ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(nThreads);
-		ThreadPoolExecutor executor = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(nTasks) );
-		// Make render tasks, split image into blocks to be rendered by the tasks
-		
 		Timer timer = new Timer();
 		timer.reset();
 
-		ArrayList<Future<?>> futures = new ArrayList<>(nTasks);
-		for(int j=0; j < Math.ceil(height/(float)taskSize); j++) {
-			for(int i=0; i < Math.ceil(width/(float)taskSize); i++) {
-				RenderTask task = new RenderTask(scene, i*taskSize, Math.min((i+1)*taskSize, width), j*taskSize, 
-																	Math.min((j+1)*taskSize, height));
-				futures.add(executor.submit(task));
-			}
+		TileScheduler scheduler = new TileScheduler(scene, tileSize, tileOrder, nThreads);
+
+		if (adaptive && !(scene.getFilm() instanceof VarianceFilm)) {
+			System.out.printf("Adaptive sampling needs a %s, sampling uniformly instead\n", VarianceFilm.class.getSimpleName());
 		}
-		
-		
-		// Wait for threads to end
-		System.out.printf("Rendering scene %s with %s threads to file %s: \n", scene.getClass().getName(), nThreads, scene.outputFilename);
-		System.out.println("0%                                                50%                                           100%");
-		System.out.println("|---------|---------|---------|---------|---------|---------|---------|---------|---------|--------|");
-		executor.shutdown();
-		int printed = 0;
-		for (Future<?> f: futures) {
-			f.get();
-			int toPrint = (int) (executor.getCompletedTaskCount()/(float)executor.getTaskCount()*100);
-			for (; printed < toPrint; printed++) {
-				System.out.print("*");
+
+		if (adaptive && scene.getFilm() instanceof VarianceFilm) {
+			System.out.printf("Rendering scene %s adaptively with %s threads to file %s: \n", scene.getClass().getName(), nThreads, scene.outputFilename);
+			AdaptiveRenderer renderer = new AdaptiveRenderer(scene, scheduler, (VarianceFilm) scene.getFilm());
+			renderer.setThreshold(adaptiveThreshold);
+			if (samplesPerPass > 0)
+				renderer.setSamplesPerPass(samplesPerPass);
+			renderer.render();
+		} else if (samplesPerPass > 0) {
+			System.out.printf("Rendering scene %s progressively with %s threads to file %s: \n", scene.getClass().getName(), nThreads, scene.outputFilename);
+			ProgressiveRenderer renderer = new ProgressiveRenderer(scene, scheduler);
+			renderer.setSamplesPerPass(samplesPerPass);
+			renderer.setTimeBudget(timeBudget);
+			renderer.setSnapshotInterval(snapshotInterval);
+			renderer.render();
+		} else {
+			Future<?> rendering = scheduler.start(scene.getSPP());
+			
+			// Wait for threads to end
+			System.out.printf("Rendering scene %s with %s threads to file %s: \n", scene.getClass().getName(), nThreads, scene.outputFilename);
+			System.out.println("0%                                                50%                                           100%");
+			System.out.println("|---------|---------|---------|---------|---------|---------|---------|---------|---------|--------|");
+			int printed = 0;
+			boolean finished = false;
+			while (!finished) {
+				try {
+					rendering.get(100, TimeUnit.MILLISECONDS);
+					finished = true;
+				} catch (TimeoutException e) {}
+				int toPrint = (int) (scheduler.progress()*100);
+				for (; printed < toPrint; printed++) {
+					System.out.print("*");
+				}
 			}
 		}
+		scheduler.shutdown();
 		scene.finish();
 
 		System.out.println();
@@ -134,6 +484,7 @@ public class Main {
 		long time_min =  time_s / 60;
 		String timing_output = String.format("Image computed in %d ms = %d min, %d sec.\n", time_ms, time_min, time_s - time_min*60);
 		System.out.print(timing_output);
+		scheduler.printTileCosts();
 		
 		// Tone map output image and write to file
 		BufferedImage image = scene.getTonemapper().process(scene.getFilm());
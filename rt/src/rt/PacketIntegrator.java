@@ -0,0 +1,17 @@
+package rt;
+
+/**
+ * An {@link Integrator} that can start from the first hit of the ray, which the caller found
+ * in advance, for example for a whole {@link RayPacket} of camera rays.
+ */
+public interface PacketIntegrator extends Integrator {
+
+	/**
+	 * Compute contribution of a ray to the image, like {@link #integrate(Ray)}.
+	 *
+	 * @param r the ray
+	 * @param hit the closest hit of the ray with the scene, null if it misses the scene
+	 * @return the contribution of the ray to the image
+	 */
+	public Spectrum integrate(Ray r, HitRecord hit);
+}
@@ -0,0 +1,15 @@
+package rt;
+
+/**
+ * An {@link Intersectable} that can intersect a whole {@link RayPacket} at once, for example
+ * an acceleration structure that visits each node once for all rays of the packet.
+ */
+public interface PacketIntersectable extends Intersectable {
+
+	/**
+	 * Intersects all rays of the packet, with the same results as {@link #intersect(Ray)} for
+	 * each of them. Hits closer than {@link RayPacket#tmax} replace the hits in
+	 * {@link RayPacket#hits}, and tmax is set to their t.
+	 */
+	public void intersect(RayPacket packet);
+}
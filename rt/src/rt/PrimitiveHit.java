@@ -0,0 +1,31 @@
+package rt;
+
+/**
+ * The result of the first phase of a {@link DeferredIntersectable}: the ray parameter t,
+ * the object that was hit and two parameters of the hit point on the object, for example
+ * barycentric coordinates on a triangle. Instances are reused for many candidate hits.
+ */
+public class PrimitiveHit {
+
+	/**
+	 * t parameter of the ray at the hit point.
+	 */
+	public float t;
+
+	/**
+	 * Parameters of the hit point, their meaning is defined by the {@link #primitive}.
+	 */
+	public float u, v;
+
+	/**
+	 * The object that was hit, makes the {@link HitRecord} for this hit.
+	 */
+	public DeferredIntersectable primitive;
+
+	/**
+	 * Makes the {@link HitRecord} of this hit.
+	 */
+	public HitRecord makeHitRecord(Ray r) {
+		return primitive.makeHitRecord(r, this);
+	}
+}
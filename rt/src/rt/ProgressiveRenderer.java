@@ -0,0 +1,111 @@
+package rt;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders an image in successive passes over all pixels, each with a few samples per pixel.
+ * The film accumulates the samples of all passes, so the image improves with every pass.
+ * <p>
+ * Between passes, a tone mapped snapshot of the image is written, either after every pass 
+ * or at a given interval, so that the best image so far is always available. Rendering stops
+ * when the number of samples per pixel of the scene is reached or when the time budget is used 
+ * up. The budget is checked between passes, so the last pass may exceed it by the time of a pass.
+ */
+public class ProgressiveRenderer {
+
+	private final Scene scene;
+	private final TileScheduler scheduler;
+
+	private int samplesPerPass = 1;
+	private long timeBudget = Long.MAX_VALUE;
+	private long snapshotInterval = 0;
+
+	private int renderedSPP;
+
+	public ProgressiveRenderer(Scene scene, TileScheduler scheduler)
+	{
+		this.scene = scene;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Sets the number of samples per pixel that are rendered in each pass.
+	 */
+	public void setSamplesPerPass(int samplesPerPass)
+	{
+		this.samplesPerPass = samplesPerPass;
+	}
+
+	/**
+	 * Sets the wall-clock time in milliseconds after which no further pass is started.
+	 */
+	public void setTimeBudget(long timeBudget)
+	{
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Sets the minimum time in milliseconds between two snapshots. With 0, a snapshot is
+	 * written after every pass.
+	 */
+	public void setSnapshotInterval(long snapshotInterval)
+	{
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * Returns the number of samples per pixel rendered so far.
+	 */
+	public int getRenderedSPP()
+	{
+		return renderedSPP;
+	}
+
+	/**
+	 * Renders passes until the samples per pixel of the scene or the time budget are reached.
+	 */
+	public void render() throws InterruptedException, ExecutionException
+	{
+		Timer timer = new Timer();
+		long lastSnapshot = 0;
+		int pass = 0;
+
+		while(renderedSPP < scene.getSPP() && timer.timeElapsed() < timeBudget)
+		{
+			int spp = Math.min(samplesPerPass, scene.getSPP() - renderedSPP);
+			scheduler.start(spp).get();
+			renderedSPP += spp;
+			pass++;
+
+			long time = timer.timeElapsed();
+			System.out.printf("Pass %d: %d samples per pixel after %d ms\n", pass, renderedSPP, time);
+
+			if(time - lastSnapshot >= snapshotInterval)
+			{
+				writeSnapshot();
+				lastSnapshot = time;
+			}
+		}
+	}
+
+	/**
+	 * Writes the tone mapped image so far, see {@link Scene#getSnapshotFilm()}. The snapshot 
+	 * is overwritten by the next one.
+	 */
+	private void writeSnapshot()
+	{
+		BufferedImage image = scene.getTonemapper().process(scene.getSnapshotFilm());
+		File file = new File(scene.getOutputFilename() + " snapshot.png");
+		try
+		{
+			ImageIO.write(image, "png", file);
+		} catch (IOException e) {
+			System.out.printf("Could not write snapshot %s: %s\n", file, e);
+		}
+	}
+}
@@ -9,13 +9,41 @@ public class Ray {
 
 	public Point3f origin;
 	public Vector3f direction;
+
+	/**
+	 * The interval of the ray parameter t, measured in multiples of the direction,
+	 * in which intersections are accepted. {@link Intersectable}s only report hits with
+	 * tmin < t < tmax, and set tmax to the t of the hit they return. Hence, while the
+	 * objects of an aggregate are intersected, tmax is the distance of the closest hit
+	 * found so far, and objects farther away are rejected as soon as their t is known.
+	 * A tmin slightly larger than zero avoids self-intersections of rays leaving a surface.
+	 */
+	public float tmin, tmax;
 	
 	public Ray(Point3f origin, Vector3f direction)
+	{
+		this(origin, direction, 0, Float.POSITIVE_INFINITY);
+	}
+
+	public Ray(Point3f origin, Vector3f direction, float tmin, float tmax)
 	{
 		this.origin = new Point3f(origin); 
 		this.direction = new Vector3f(direction);
+		this.tmin = tmin;
+		this.tmax = tmax;
 	}
 	
+	/**
+	 * Reinitializes the ray like the constructor does, without allocating.
+	 */
+	public void set(Point3f origin, Vector3f direction, float tmin, float tmax)
+	{
+		this.origin.set(origin);
+		this.direction.set(direction);
+		this.tmin = tmin;
+		this.tmax = tmax;
+	}
+
 	public Point3f pointAt(float t) {
 		Point3f p = new Point3f(direction);
 		p.scaleAdd(t, origin);
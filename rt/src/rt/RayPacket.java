@@ -0,0 +1,99 @@
+package rt;
+
+import java.util.Arrays;
+
+/**
+ * A packet of rays that are intersected together, see {@link PacketIntersectable}. The rays
+ * are stored as a structure of arrays, one array per component of the origins and directions
+ * and one per bound of the intervals. Like {@link Ray#tmax} of a single ray, {@link #tmax}
+ * is set to the t of the closest hit found so far, which is stored in {@link #hits}.
+ * <p>
+ * Packets are meant for coherent rays, such as the camera rays through one pixel. Since the
+ * directions of such rays are similar, the rays mostly visit the same nodes of an acceleration
+ * structure, which is then traversed once for all of them.
+ */
+public class RayPacket {
+
+	/**
+	 * The number of rays a packet can hold.
+	 */
+	public static final int CAPACITY = 64;
+
+	public final float[] ox = new float[CAPACITY], oy = new float[CAPACITY], oz = new float[CAPACITY];
+	public final float[] dx = new float[CAPACITY], dy = new float[CAPACITY], dz = new float[CAPACITY];
+	public final float[] tmin = new float[CAPACITY], tmax = new float[CAPACITY];
+
+	/**
+	 * The closest hit of each ray, or null if it has not hit anything.
+	 */
+	public final HitRecord[] hits = new HitRecord[CAPACITY];
+
+	public int size;
+
+	/**
+	 * Removes all rays.
+	 */
+	public void clear()
+	{
+		Arrays.fill(hits, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Adds a copy of @param r to the packet.
+	 *
+	 * @return the index of the ray in the packet
+	 */
+	public int add(Ray r)
+	{
+		int i = size++;
+		ox[i] = r.origin.x;
+		oy[i] = r.origin.y;
+		oz[i] = r.origin.z;
+		dx[i] = r.direction.x;
+		dy[i] = r.direction.y;
+		dz[i] = r.direction.z;
+		tmin[i] = r.tmin;
+		tmax[i] = r.tmax;
+		hits[i] = null;
+		return i;
+	}
+
+	public boolean isFull()
+	{
+		return size == CAPACITY;
+	}
+
+	/**
+	 * Sets @param r to ray @param i of the packet, including its interval.
+	 */
+	public void getRay(int i, Ray r)
+	{
+		r.origin.set(ox[i], oy[i], oz[i]);
+		r.direction.set(dx[i], dy[i], dz[i]);
+		r.tmin = tmin[i];
+		r.tmax = tmax[i];
+	}
+
+	/**
+	 * Intersects the rays of the packet one by one with @param object, which does not
+	 * support packets itself, and keeps the closer hits.
+	 */
+	public void intersectEach(Intersectable object)
+	{
+		Scratch scratch = Scratch.get();
+		Ray r = scratch.acquireRay();
+		try {
+			for (int i = 0; i < size; i++) {
+				getRay(i, r);
+				HitRecord hit = object.intersect(r);
+				if (hit != null) {
+					hits[i] = hit;
+					tmax[i] = r.tmax;
+				}
+			}
+		} finally {
+			scratch.releaseRay();
+		}
+	}
+}
@@ -18,4 +18,63 @@ public interface Sampler {
 	 * @return the array of d-dimensional samples samples
 	 */
 	public float[][] makeSamples(int n, int d);
+
+	/**
+	 * Make a single one-dimensional sample in the range [0,1]. Unlike 
+	 * {@link #makeSamples(int, int)}, this does not allocate, so it can be 
+	 * used in the inner loops of the integrators.
+	 */
+	public float nextFloat();
+
+	/**
+	 * Make a single two-dimensional sample in the range [0,1]^2 without 
+	 * allocating.
+	 * 
+	 * @param sample receives the sample in its first two entries
+	 */
+	public void next2D(float[] sample);
+
+	/**
+	 * Start making the samples of pixel (x, y). The next call to 
+	 * {@link #makeSamples(int, int)} returns the samples of this pixel with 
+	 * the indices firstSample, firstSample+1, and so on. Samplers that 
+	 * derive their samples from the pixel and the sample index produce the 
+	 * same image regardless of the order in which the pixels are rendered.
+	 * 
+	 * @param x x-coordinate of the pixel
+	 * @param y y-coordinate of the pixel
+	 * @param firstSample the number of samples already made for this pixel
+	 */
+	public void startPixel(int x, int y, int firstSample);
+
+	/**
+	 * Start making the remaining dimensions of a sample returned by the 
+	 * last call to {@link #makeSamples(int, int)}. The following calls to 
+	 * {@link #nextFloat()} and {@link #next2D(float[])} return the 
+	 * dimensions of this sample that follow those returned by makeSamples, 
+	 * for example the dimensions used along a light path.
+	 * 
+	 * @param index the index of the sample in the array returned by makeSamples
+	 */
+	public void startSample(int index);
+
+	/**
+	 * Continue with pixel (x, y) after the samples of another pixel were 
+	 * made, as if {@link #startPixel(int, int, int)} and 
+	 * {@link #makeSamples(int, int)} were called again, but without making 
+	 * the samples. {@link #startSample(int)} then continues the samples.
+	 * 
+	 * @param samples the samples of the pixel, as returned by makeSamples
+	 */
+	public void resumePixel(int x, int y, int firstSample, float[][] samples);
+
+	/**
+	 * Make the samples a function of the pixel, the sample index and the 
+	 * seed only, so that rendering twice with the same seed gives identical 
+	 * images, no matter how many threads render the pixels and in which 
+	 * order. See {@link Main#deterministic}.
+	 * 
+	 * @param seed different seeds give different, independent samples
+	 */
+	public void setSeed(long seed);
 }
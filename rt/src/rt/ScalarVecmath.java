@@ -0,0 +1,122 @@
+package rt;
+
+import javax.vecmath.*;
+
+/**
+ * Allocation-free vector math for the inner loops of intersection and shading. Unlike
+ * {@link StaticVecmath}, these functions never make new vecmath objects. They work on
+ * float scalars and on 3-vectors stored as three consecutive floats in an array, like the
+ * vertex data of a {@link rt.intersectables.Mesh}, and they write their results into
+ * tuples given by the caller, for example into the registers of {@link Scratch}.
+ * <p>
+ * The results are the same as those of the corresponding vecmath operations.
+ */
+public class ScalarVecmath {
+
+	public static float dot(float ax, float ay, float az, float bx, float by, float bz)
+	{
+		return ax*bx + ay*by + az*bz;
+	}
+
+	/**
+	 * Returns the dot product of the vector at @param i in @param a with @param b.
+	 */
+	public static float dot(float[] a, int i, Tuple3f b)
+	{
+		return a[i]*b.x + a[i+1]*b.y + a[i+2]*b.z;
+	}
+
+	/**
+	 * Sets @param out to the cross product of the vectors at @param i and @param j in @param a.
+	 */
+	public static void cross(float[] a, int i, int j, Tuple3f out)
+	{
+		out.x = a[i+1]*a[j+2] - a[i+2]*a[j+1];
+		out.y = a[j]*a[i+2] - a[j+2]*a[i];
+		out.z = a[i]*a[j+1] - a[i+1]*a[j];
+	}
+
+	/**
+	 * Sets @param out to the weighted sum of the vectors at @param i, @param j and @param k
+	 * in @param a, with the barycentric weights @param alpha, @param beta and @param gamma.
+	 */
+	public static void interpolate(float[] a, int i, int j, int k, float alpha, float beta, float gamma, Tuple3f out)
+	{
+		out.x = alpha*a[i] + beta*a[j] + gamma*a[k];
+		out.y = alpha*a[i+1] + beta*a[j+1] + gamma*a[k+1];
+		out.z = alpha*a[i+2] + beta*a[j+2] + gamma*a[k+2];
+	}
+
+	/**
+	 * Returns the weighted sum of the scalars at @param i, @param j and @param k in @param a.
+	 */
+	public static float interpolate(float[] a, int i, int j, int k, float alpha, float beta, float gamma)
+	{
+		return alpha*a[i] + beta*a[j] + gamma*a[k];
+	}
+
+	/**
+	 * Sets @param out to the point @param p transformed by @param m. The tuples may be the same.
+	 */
+	public static void transformPoint(Matrix4f m, Tuple3f p, Tuple3f out)
+	{
+		float x = m.m00*p.x + m.m01*p.y + m.m02*p.z + m.m03;
+		float y = m.m10*p.x + m.m11*p.y + m.m12*p.z + m.m13;
+		out.z = m.m20*p.x + m.m21*p.y + m.m22*p.z + m.m23;
+		out.x = x;
+		out.y = y;
+	}
+
+	/**
+	 * Sets @param out to the vector @param v transformed by @param m, ignoring the translation.
+	 * The tuples may be the same.
+	 */
+	public static void transformVector(Matrix4f m, Tuple3f v, Tuple3f out)
+	{
+		float x = m.m00*v.x + m.m01*v.y + m.m02*v.z;
+		float y = m.m10*v.x + m.m11*v.y + m.m12*v.z;
+		out.z = m.m20*v.x + m.m21*v.y + m.m22*v.z;
+		out.x = x;
+		out.y = y;
+	}
+
+	/**
+	 * Transforms the normal @param n in place by the transpose of @param inv, which is the
+	 * inverse of the transformation of the points.
+	 */
+	public static void transformNormal(Matrix4f inv, Tuple3f n)
+	{
+		float x = inv.m00*n.x + inv.m10*n.y + inv.m20*n.z;
+		float y = inv.m01*n.x + inv.m11*n.y + inv.m21*n.z;
+		n.z = inv.m02*n.x + inv.m12*n.y + inv.m22*n.z;
+		n.x = x;
+		n.y = y;
+	}
+
+	/**
+	 * Transforms @param v in place from the frame with the axes @param t1, @param t2 and
+	 * @param n to the coordinates in which the axes are given.
+	 */
+	public static void fromFrame(Vector3f t1, Vector3f t2, Vector3f n, Tuple3f v)
+	{
+		float x = t1.x*v.x + t2.x*v.y + n.x*v.z;
+		float y = t1.y*v.x + t2.y*v.y + n.y*v.z;
+		v.z = t1.z*v.x + t2.z*v.y + n.z*v.z;
+		v.x = x;
+		v.y = y;
+	}
+
+	/**
+	 * Sets @param out to the mirror image of the normalized @param direction at @param normal,
+	 * like {@link StaticVecmath#reflect(Vector3f, Vector3f)}.
+	 */
+	public static void reflect(Vector3f direction, Vector3f normal, Vector3f out)
+	{
+		float norm = (float) (1.0/Math.sqrt(direction.x*direction.x + direction.y*direction.y + direction.z*direction.z));
+		float ix = -(direction.x*norm), iy = -(direction.y*norm), iz = -(direction.z*norm);
+		float s = -2 * (ix*normal.x + iy*normal.y + iz*normal.z);
+		out.x = s*normal.x + ix;
+		out.y = s*normal.y + iy;
+		out.z = s*normal.z + iz;
+	}
+}
@@ -65,4 +65,14 @@ public abstract class Scene {
 	public void finish()
 	{
 	}
+
+	/**
+	 * Returns the film with the image rendered so far, for snapshots taken before 
+	 * {@link #finish()}. Scenes that complete the film in finish, for example with the 
+	 * light image of bidirectional path tracing, return a copy that includes it.
+	 */
+	public Film getSnapshotFilm()
+	{
+		return film;
+	}
 }
@@ -0,0 +1,69 @@
+package rt;
+
+import java.util.Arrays;
+
+import javax.vecmath.*;
+
+/**
+ * Per-thread scratch objects for intersection and shading code that is shared between the
+ * render threads, such as materials and intersectables, and therefore cannot keep scratch
+ * objects in fields. Use them with {@link ScalarVecmath} to avoid allocating temporary
+ * vecmath objects.
+ * <p>
+ * The registers are only valid until the next call into code that may use them as well, so
+ * they must not be held while other objects are intersected or shaded. Rays are handed out
+ * in a stack instead, so that nested intersections, like those of an {@link
+ * rt.intersectables.Instance} in another instance, each get their own ray.
+ */
+public final class Scratch {
+
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	public final Vector3f v0 = new Vector3f();
+	public final Vector3f v1 = new Vector3f();
+
+	/**
+	 * Receives the hits of occlusion tests, which only need to know if there is a hit.
+	 */
+	public final PrimitiveHit hit = new PrimitiveHit();
+
+	private Ray[] rays = new Ray[0];
+	private int depth;
+
+	private Scratch()
+	{
+	}
+
+	/**
+	 * Returns the scratch objects of the calling thread.
+	 */
+	public static Scratch get()
+	{
+		return scratch.get();
+	}
+
+	/**
+	 * Returns a ray that is not in use. It must be returned with {@link #releaseRay()}.
+	 */
+	public Ray acquireRay()
+	{
+		if (depth == rays.length) {
+			rays = Arrays.copyOf(rays, depth + 1);
+			rays[depth] = new Ray(new Point3f(), new Vector3f());
+		}
+		return rays[depth++];
+	}
+
+	/**
+	 * Returns the ray acquired last.
+	 */
+	public void releaseRay()
+	{
+		depth--;
+	}
+}
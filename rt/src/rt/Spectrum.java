@@ -2,6 +2,9 @@ package rt;
 
 /**
  * Stores a spectrum of color values. In this implementation, we work with RGB colors.
+ * <p>
+ * All operations modify the spectrum in place and do not allocate, so that a few
+ * spectra can be reused as scratch space in the inner loops of the integrators.
  */
 public class Spectrum {
 
@@ -28,6 +31,20 @@ public class Spectrum {
 		this.b = s.b;
 	}
 	
+	public void set(float r, float g, float b)
+	{
+		this.r = r;
+		this.g = g;
+		this.b = b;
+	}
+
+	public void set(Spectrum s)
+	{
+		r = s.r;
+		g = s.g;
+		b = s.b;
+	}
+
 	public void mult(float t)
 	{
 		r = r*t;
@@ -42,9 +59,21 @@ public class Spectrum {
 		b = b*s.b;
 	}
 
+	/**
+	 * Sets this spectrum to the product of @param s and @param t.
+	 */
+	public void mult(Spectrum s, Spectrum t)
+	{
+		r = s.r*t.r;
+		g = s.g*t.g;
+		b = s.b*t.b;
+	}
+
 	public void div(float d)
 	{
-		div(new Spectrum(d, d, d));
+		r /= d;
+		g /= d;
+		b /= d;
 	}
 
 	public void div(Spectrum d)
@@ -63,7 +92,47 @@ public class Spectrum {
 
 	public void add(float t)
 	{
-		add(new Spectrum(t, t, t));
+		r = r+t;
+		g = g+t;
+		b = b+t;
+	}
+
+	/**
+	 * Adds @param s scaled by @param t.
+	 */
+	public void addScaled(float t, Spectrum s)
+	{
+		r = r+t*s.r;
+		g = g+t*s.g;
+		b = b+t*s.b;
+	}
+
+	/**
+	 * Adds the product of @param s and @param t.
+	 */
+	public void addProduct(Spectrum s, Spectrum t)
+	{
+		r = r+s.r*t.r;
+		g = g+s.g*t.g;
+		b = b+s.b*t.b;
+	}
+
+	/**
+	 * The luminance of linear sRGB.
+	 */
+	public float luminance()
+	{
+		return 0.2126f*r + 0.7152f*g + 0.0722f*b;
+	}
+
+	public float maxComponent()
+	{
+		return Math.max(r, Math.max(g, b));
+	}
+
+	public boolean isBlack()
+	{
+		return r == 0 && g == 0 && b == 0;
 	}
 	
 	public void clamp(float min, float max)
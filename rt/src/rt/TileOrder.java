@@ -0,0 +1,114 @@
+package rt;
+
+import java.util.Arrays;
+
+/**
+ * The order in which the tiles of an image are rendered. Tiles that are close in the order 
+ * are rendered by the same thread, so an order in which consecutive tiles are also close in 
+ * the image lets a thread reuse the geometry that is already in its caches.
+ */
+public enum TileOrder {
+
+	/**
+	 * Row by row, from left to right.
+	 */
+	ROW_MAJOR,
+
+	/**
+	 * Along a Morton (Z-order) curve, which recursively visits the four quadrants of 
+	 * the image in a Z pattern.
+	 */
+	MORTON,
+
+	/**
+	 * Along a Hilbert curve. Unlike the Morton curve, consecutive tiles are always adjacent.
+	 */
+	HILBERT;
+
+	/**
+	 * Returns the indices i + j*tilesX of all tiles of a grid of tilesX by tilesY tiles, 
+	 * sorted in this order.
+	 */
+	public int[] order(int tilesX, int tilesY)
+	{
+		int n = tilesX * tilesY;
+		int size = Integer.highestOneBit(Math.max(1, Math.max(tilesX, tilesY) - 1)) << 1;
+
+		// The position along the curve in the upper and the index in the lower 32 bits
+		long[] keys = new long[n];
+		for(int j=0; j<tilesY; j++)
+		{
+			for(int i=0; i<tilesX; i++)
+			{
+				int index = i + j*tilesX;
+				long position;
+				switch(this) {
+				case MORTON:
+					position = morton(i, j);
+					break;
+				case HILBERT:
+					position = hilbert(size, i, j);
+					break;
+				default:
+					position = index;
+				}
+				keys[index] = (position << 32) | index;
+			}
+		}
+		Arrays.sort(keys);
+
+		int[] order = new int[n];
+		for(int k=0; k<n; k++)
+		{
+			order[k] = (int) keys[k];
+		}
+		return order;
+	}
+
+	private static long morton(int x, int y)
+	{
+		return spreadBits(x) | (spreadBits(y) << 1);
+	}
+
+	/**
+	 * Inserts a zero bit after each of the lower 16 bits of {@param x}.
+	 */
+	private static long spreadBits(int x)
+	{
+		long v = x & 0xFFFFL;
+		v = (v | (v << 8)) & 0x00FF00FFL;
+		v = (v | (v << 4)) & 0x0F0F0F0FL;
+		v = (v | (v << 2)) & 0x33333333L;
+		v = (v | (v << 1)) & 0x55555555L;
+		return v;
+	}
+
+	/**
+	 * Returns the position of cell (x, y) along the Hilbert curve through a grid of 
+	 * {@param size} by {@param size} cells, where size is a power of two.
+	 */
+	private static long hilbert(int size, int x, int y)
+	{
+		long d = 0;
+		for(int s=size/2; s>0; s/=2)
+		{
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+
+			// Rotate the quadrant, so that the curve is continuous
+			if(ry == 0)
+			{
+				if(rx == 1)
+				{
+					x = size-1 - x;
+					y = size-1 - y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return d;
+	}
+}
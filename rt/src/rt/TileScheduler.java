@@ -0,0 +1,207 @@
+package rt;
+
+import rt.films.FilmTile;
+import rt.films.TiledFilm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the tiles of an image in a work-stealing fork/join pool.
+ * <p>
+ * The tiles are sorted along a {@link TileOrder}, and the range of tiles is split 
+ * recursively into halves. Each thread works on a contiguous part of the curve, and
+ * a thread that runs out of tiles steals the largest remaining range from another 
+ * thread. Tiles that are expensive to render, such as those covering a glass sphere, 
+ * are therefore balanced among the threads until the very end of the frame.
+ * <p>
+ * Every pool thread renders with its own {@link Main.RenderWorker}, which is reused 
+ * for all tiles it renders. The time spent on each tile is recorded, so that the 
+ * tile size can be tuned per scene.
+ * <p>
+ * Tiles that render tasks leave unmerged (see {@link Main#deterministic}) are kept 
+ * until all tiles of the pass are rendered, and then merged into the film in the 
+ * order of their indices.
+ */
+public class TileScheduler {
+
+	private final Scene scene;
+	private final int tileSize, tilesX, tilesY;
+	private final int[] order;
+	private final ForkJoinPool pool;
+
+	/**
+	 * The render worker of each pool thread.
+	 */
+	private final ThreadLocal<Main.RenderWorker> workers = new ThreadLocal<Main.RenderWorker>() {
+		@Override
+		protected Main.RenderWorker initialValue() {
+			return new Main.RenderWorker(scene);
+		}
+	};
+
+	private final long[] tileCosts;
+	private final FilmTile[] tiles;
+	private final AtomicInteger completed = new AtomicInteger();
+	private int samplesPerPixel;
+	private int[] pixelSamples;
+
+	/**
+	 * The number of samples rendered so far for each pixel, so that every pass 
+	 * continues the sample sequences of the pixels.
+	 */
+	private final int[] renderedSamples;
+
+	public TileScheduler(Scene scene, int tileSize, TileOrder tileOrder, int nThreads)
+	{
+		this.scene = scene;
+		this.tileSize = tileSize;
+		this.tilesX = (scene.getFilm().getWidth() + tileSize - 1) / tileSize;
+		this.tilesY = (scene.getFilm().getHeight() + tileSize - 1) / tileSize;
+		this.order = tileOrder.order(tilesX, tilesY);
+		this.pool = new ForkJoinPool(nThreads);
+		this.tileCosts = new long[tilesX * tilesY];
+		this.tiles = new FilmTile[tilesX * tilesY];
+		this.renderedSamples = new int[scene.getFilm().getWidth() * scene.getFilm().getHeight()];
+	}
+
+	/**
+	 * Starts rendering a pass of {@param spp} samples per pixel over all tiles and returns 
+	 * immediately. The returned task completes when the pass is finished. The next pass 
+	 * must not be started before.
+	 */
+	public ForkJoinTask<Void> start(int spp)
+	{
+		return start(spp, null);
+	}
+
+	/**
+	 * Starts rendering a pass like {@link #start(int)}, but with an individual number 
+	 * of samples for each pixel, given by {@param spp}[i + j*width] for pixel (i, j).
+	 */
+	public ForkJoinTask<Void> start(int[] spp)
+	{
+		return start(0, spp);
+	}
+
+	private ForkJoinTask<Void> start(int spp, int[] pixelSPP)
+	{
+		samplesPerPixel = spp;
+		pixelSamples = pixelSPP;
+		completed.set(0);
+		return pool.submit(new TileRange(0, order.length));
+	}
+
+	/**
+	 * Lets the threads of the pool terminate once the current pass is finished.
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the fraction of tiles of the current pass that have been completed.
+	 */
+	public float progress()
+	{
+		return completed.get() / (float) order.length;
+	}
+
+	/**
+	 * Returns the time in nanoseconds spent on each tile in all passes, indexed by 
+	 * i + j*tilesX for the tile in column i and row j.
+	 */
+	public long[] getTileCosts()
+	{
+		return tileCosts;
+	}
+
+	/**
+	 * Prints statistics on the time spent per tile. A maximum far above the mean 
+	 * indicates that smaller tiles would balance the load better, while a mean close 
+	 * to the scheduling overhead indicates that larger tiles would be faster.
+	 */
+	public void printTileCosts()
+	{
+		long min = Long.MAX_VALUE, max = 0, sum = 0;
+		for(long cost : tileCosts)
+		{
+			min = Math.min(min, cost);
+			max = Math.max(max, cost);
+			sum += cost;
+		}
+		double mean = sum / (double) tileCosts.length;
+		System.out.printf("%d tiles of %dx%d pixels, time per tile: min %.3f ms, mean %.3f ms, max %.3f ms (%.1fx mean)\n",
+				tileCosts.length, tileSize, tileSize, min * 1e-6, mean * 1e-6, max * 1e-6, max / mean);
+	}
+
+	private void renderTile(int index)
+	{
+		int i = index % tilesX;
+		int j = index / tilesX;
+		int width = scene.getFilm().getWidth();
+		int height = scene.getFilm().getHeight();
+		Main.RenderTask task = new Main.RenderTask(i*tileSize, Math.min((i+1)*tileSize, width), j*tileSize, 
+															Math.min((j+1)*tileSize, height), samplesPerPixel);
+		task.pixelSPP = pixelSamples;
+		task.renderedSPP = renderedSamples;
+
+		long start = System.nanoTime();
+		workers.get().render(task);
+		tileCosts[index] += System.nanoTime() - start;
+		tiles[index] = task.tile;
+		completed.incrementAndGet();
+	}
+
+	private void mergeTiles()
+	{
+		TiledFilm film = null;
+		for(int i = 0; i < tiles.length; i++)
+		{
+			if(tiles[i] != null)
+			{
+				if(film == null)
+					film = (TiledFilm) scene.getFilm();
+				film.mergeTile(tiles[i]);
+				tiles[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Renders the tiles at the positions [start, end) along the tile order.
+	 */
+	@SuppressWarnings("serial")
+	private class TileRange extends RecursiveAction {
+
+		private final int start, end;
+
+		TileRange(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(end - start <= 1)
+			{
+				if(end > start)
+					renderTile(order[start]);
+			}
+			else
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new TileRange(start, middle), new TileRange(middle, end));
+			}
+
+			// The whole pass is done when the root range is
+			if(start == 0 && end == order.length)
+				mergeTiles();
+		}
+	}
+}
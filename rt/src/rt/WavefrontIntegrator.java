@@ -0,0 +1,29 @@
+package rt;
+
+/**
+ * An {@link Integrator} that traces many paths at once, instead of one path per call to
+ * {@link #integrate(Ray)}. The caller adds the camera rays of many samples, and then traces
+ * all of their paths together, which lets the integrator process the paths stage by stage.
+ */
+public interface WavefrontIntegrator extends Integrator {
+
+	/**
+	 * Returns the number of paths that can be added before {@link #tracePaths()} has to be called.
+	 */
+	public int getCapacity();
+
+	/**
+	 * Adds the path that starts with the camera ray @param r. All random numbers along the path
+	 * are drawn right away, from the dimensions of the current sample of the sampler passed to
+	 * {@link #makePixelSamples(Sampler, int)}, see {@link Sampler#startSample(int)}.
+	 */
+	public void addPath(Ray r);
+
+	/**
+	 * Traces all paths added since the last call.
+	 *
+	 * @return the contributions of the paths to the image, in the order in which they were
+	 * added. The array and its entries are overwritten by the next call.
+	 */
+	public Spectrum[] tracePaths();
+}
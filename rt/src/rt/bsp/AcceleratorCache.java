@@ -0,0 +1,264 @@
+package rt.bsp;
+
+import rt.ObjReader;
+import rt.intersectables.Mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Caches meshes read from .obj files together with their {@link BSPAccelerator} in a binary file.
+ * <p>
+ * The cache files are keyed by a hash of the content of the .obj file and the parameters that
+ * influence the result (the scale and the {@link SplitMethod}). On a hit, the cache file is
+ * memory-mapped and its arrays are copied in bulk, so parsing the .obj file and building the
+ * tree are skipped. On a miss, the mesh is read and the tree is built as usual, and the result
+ * is written to the cache for subsequent runs.
+ */
+public class AcceleratorCache
+{
+    private static final int MAGIC = 0x52544243; // "RTBC"
+
+    /**
+     * Must be incremented whenever the file format or the construction of the trees changes,
+     * so that stale cache files are not used anymore.
+     */
+    private static final int VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * Initializes a cache in the directory rt-cache in the temporary directory of the system.
+     */
+    public AcceleratorCache()
+    {
+        this(new File(System.getProperty("java.io.tmpdir"), "rt-cache"));
+    }
+
+    /**
+     * Initializes a cache that stores its files in {@param directory}. The directory is created if necessary.
+     */
+    public AcceleratorCache(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads an .obj file like {@link ObjReader#read(String, float)} and returns a {@link BSPAccelerator}
+     * for the mesh that is ready for intersection tests. The mesh is available via {@link BSPAccelerator#getObjects()}.
+     *
+     * @param fileName      the file to read.
+     * @param scale         scales the object to fit into a cube of the given size
+     * @param splitMethod   the strategy to choose the split planes of the tree
+     * @throws IOException  If the .obj file cannot be read. Failures of the cache itself are reported but not thrown.
+     */
+    public BSPAccelerator read(String fileName, float scale, SplitMethod splitMethod) throws IOException
+    {
+        byte[] key = key(fileName, scale, splitMethod);
+        File cacheFile = new File(directory, toHex(key) + ".bsp");
+
+        if (cacheFile.isFile())
+        {
+            try
+            {
+                BSPAccelerator accelerator = load(cacheFile, key);
+                if (accelerator != null)
+                {
+                    return accelerator;
+                }
+            }
+            catch (IOException | BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+            {
+                System.out.printf("Ignoring invalid cache file %s: %s\n", cacheFile, e);
+            }
+        }
+
+        Mesh mesh = ObjReader.read(fileName, scale);
+        BSPAccelerator accelerator = new BSPAccelerator(mesh, splitMethod);
+        accelerator.construct();
+
+        try
+        {
+            store(cacheFile, key, mesh, accelerator);
+        }
+        catch (IOException e)
+        {
+            System.out.printf("Could not write cache file %s: %s\n", cacheFile, e);
+        }
+        return accelerator;
+    }
+
+    /**
+     * Loads a cache file by mapping it into memory.
+     *
+     * @return  null, if the file was written for a different key or by a different version.
+     */
+    private BSPAccelerator load(File cacheFile, byte[] key) throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r"); FileChannel channel = file.getChannel())
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                return null;
+            }
+            byte[] storedKey = new byte[key.length];
+            buffer.get(storedKey);
+            if (!Arrays.equals(key, storedKey))
+            {
+                return null;
+            }
+
+            float[] vertices = getFloats(buffer);
+            float[] normals = getFloats(buffer);
+            float[] texCoords = getFloats(buffer);
+            int[] indices = getInts(buffer);
+            Mesh mesh = new Mesh(vertices, normals, texCoords, indices);
+
+            return BSPAccelerator.read(buffer, mesh);
+        }
+    }
+
+    /**
+     * Writes a cache file. The file is written under a temporary name first and renamed afterwards,
+     * such that concurrent runs never see a partially written file.
+     */
+    private void store(File cacheFile, byte[] key, Mesh mesh, BSPAccelerator accelerator) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        int size = 8 + key.length
+                + 4 * (4 + mesh.vertices.length + mesh.normals.length + mesh.texCoords.length + mesh.indices.length)
+                + accelerator.serializedSize();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(key);
+        putFloats(buffer, mesh.vertices);
+        putFloats(buffer, mesh.normals);
+        putFloats(buffer, mesh.texCoords);
+        putInts(buffer, mesh.indices);
+        accelerator.write(buffer);
+        buffer.flip();
+
+        File tmp = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+        try
+        {
+            try (RandomAccessFile file = new RandomAccessFile(tmp, "rw"); FileChannel channel = file.getChannel())
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content of the file and the parameters.
+     */
+    private static byte[] key(String fileName, float scale, SplitMethod splitMethod) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {   // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel())
+        {
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+            while (channel.read(chunk) != -1)
+            {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+            }
+        }
+
+        ByteBuffer parameters = ByteBuffer.allocate(12);
+        parameters.putInt(VERSION);
+        parameters.putFloat(scale);
+        parameters.putInt(splitMethod.ordinal());
+        digest.update(parameters.array());
+        return digest.digest();
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+        {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /*
+     * Arrays are stored as their length followed by the elements.
+     */
+
+    static void putInts(ByteBuffer buffer, int[] values)
+    {
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    static void putFloats(ByteBuffer buffer, float[] values)
+    {
+        buffer.putInt(values.length);
+        buffer.asFloatBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    static int[] getInts(ByteBuffer buffer)
+    {
+        int[] values = new int[checkLength(buffer, buffer.getInt())];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+
+    static float[] getFloats(ByteBuffer buffer)
+    {
+        float[] values = new float[checkLength(buffer, buffer.getInt())];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+
+    private static int checkLength(ByteBuffer buffer, int length)
+    {
+        if (length < 0 || length > buffer.remaining() / 4)
+        {
+            throw new IllegalArgumentException("Invalid array length " + length);
+        }
+        return length;
+    }
+}
@@ -1,29 +1,113 @@
 package rt.bsp;
 
+import rt.DeferredIntersectable;
 import rt.HitRecord;
 import rt.Intersectable;
+import rt.PacketIntersectable;
+import rt.PrimitiveHit;
 import rt.Ray;
+import rt.RayPacket;
+import rt.Scratch;
 import rt.intersectables.Aggregate;
-import rt.intersectables.IntersectableList;
+import rt.intersectables.MeshTriangle;
+import rt.intersectables.TriangleBlocks;
 
-import javax.vecmath.Point3f;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Implements an acceleration structure using axis aligned bounding boxes
  */
-public class BSPAccelerator implements Intersectable
+public class BSPAccelerator implements PacketIntersectable
 {
 
-    public static final float EPSILON = 0.001f;
+    /**
+     * Estimated cost of traversing an inner node, relative to {@link #SAH_INTERSECTION_COST}.
+     */
+    public static final float SAH_TRAVERSAL_COST = 1;
 
+    /**
+     * Estimated cost of intersecting a ray with a single object.
+     */
+    public static final float SAH_INTERSECTION_COST = 80;
+
+    /**
+     * Fraction of the cost that is saved if one side of a split is empty.
+     */
+    public static final float SAH_EMPTY_BONUS = 0.5f;
+
+    /**
+     * Packets with fewer rays are traversed ray by ray, see {@link #intersect(RayPacket)}.
+     */
+    public static final int MIN_PACKET_SIZE = 4;
+
+    private SplitMethod splitMethod;
     private int maxDepth, maxObjectsPerNode;
-    private BSPNode root;
     private Aggregate objects;
 
+    /**
+     * The objects referenced by the leaves.
+     */
+    private Intersectable[] primitives;
+
+    /**
+     * The bounding boxes of the objects, only needed during construction.
+     * The bounds are stored as xmin, ymin, zmin, xmax, ymax, zmax for each object consecutively.
+     */
+    private float[] bounds;
+
+    /*
+     * The tree is compiled into the following flat arrays after construction. The nodes are stored
+     * depth-first, such that the node below the split plane directly follows its parent.
+     */
+
+    /**
+     * Two integers per node. For a leaf: the offset of its objects in {@link #leafObjects} and the number of objects.
+     * For an inner node: the index of the node above the split plane and -(axis + 1) of the split axis.
+     */
+    private int[] nodeData;
+
+    /**
+     * The position of the split plane of every inner node.
+     */
+    private float[] nodeSplits;
+
+    /**
+     * The bounding box of the root node, stored as xmin, ymin, zmin, xmax, ymax, zmax.
+     */
+    private float[] rootBounds;
+
+    /**
+     * The indices into {@link #primitives} of the objects in each leaf, stored contiguously per leaf.
+     */
+    private int[] leafObjects;
+
+    private int numNodes, numLeafObjects;
+
+    /**
+     * The triangles of the leaves that only contain {@link MeshTriangle}s, see {@link #setTriangleBlockWidth(int)}.
+     */
+    private TriangleBlocks triangleBlocks;
+
+    /**
+     * For each node, the start of its triangles in {@link #triangleBlocks},
+     * or -1 if its objects are intersected one by one.
+     */
+    private int[] leafBlocks;
+
+    private int triangleBlockWidth = TriangleBlocks.DEFAULT_WIDTH;
+
+    private boolean parallelBuild = true;
+
     /**
      * Initializes an acceleration structure with parameters for the stopping criteria.
+     * The split planes are placed with {@link SplitMethod#MEAN}.
      * @param objects               An aggregate of objects.
      * @param maxObjectsPerNode     If this number is reached in the construction process, the node will not be split again.
      * @param maxDepth              The maximum depth of the tree. If this number is reached, the node will not be further split.
@@ -33,6 +117,7 @@ public class BSPAccelerator implements Intersectable
         this.objects = objects;
         this.maxDepth = maxDepth;
         this.maxObjectsPerNode = maxObjectsPerNode;
+        this.splitMethod = SplitMethod.MEAN;
     }
 
     /**
@@ -44,28 +129,304 @@ public class BSPAccelerator implements Intersectable
         this(objects, 5, (int) Math.round(8 + 1.3 * Math.log(objects.count())));
     }
 
+    /**
+     * Initializes an acceleration structure that places its split planes with the given {@link SplitMethod}.
+     * With {@link SplitMethod#SAH} the tree is terminated by the estimated cost of each split, the depth
+     * of the tree is only limited to guard against degenerate input.
+     * @param objects               An aggregate of objects.
+     * @param splitMethod           The strategy to choose the split planes.
+     */
+    public BSPAccelerator(Aggregate objects, SplitMethod splitMethod)
+    {
+        this(objects);
+        this.splitMethod = splitMethod;
+        if (splitMethod == SplitMethod.SAH)
+        {
+            int n = Math.max(1, objects.count());
+            this.maxDepth = (int) Math.round(8 + 1.3 * Math.log(n) / Math.log(2));
+            this.maxObjectsPerNode = 1;
+        }
+    }
+
     /**
      * Recursively constructs the acceleration structure.
+     * The sub-trees of large nodes are built in parallel, the resulting tree does not depend on the number of threads.
      */
     public void construct()
     {
-        root = buildTree(objects, objects.getBoundingBox(), Axis.X, 0);
+        int n = objects.count();
+        primitives = new Intersectable[n];
+        bounds = new float[6 * n];
+        int[] all = new int[n];
+
+        Iterator<Intersectable> iterator = objects.iterator();
+        for (int i = 0; i < n; i++)
+        {
+            primitives[i] = iterator.next();
+            AABoundingBox b = primitives[i].getBoundingBox();
+            bounds[6 * i] = b.xmin();
+            bounds[6 * i + 1] = b.ymin();
+            bounds[6 * i + 2] = b.zmin();
+            bounds[6 * i + 3] = b.xmax();
+            bounds[6 * i + 4] = b.ymax();
+            bounds[6 * i + 5] = b.zmax();
+            all[i] = i;
+        }
+
+        BSPNode root = ParallelBuild.invoke(new BuildTask(all, objects.getBoundingBox(), Axis.X, 0, 0));
+        bounds = null;
+
+        compile(root);
+    }
+
+    /**
+     * Returns the aggregate of objects the acceleration structure is built for.
+     */
+    public Aggregate getObjects()
+    {
+        return objects;
+    }
+
+    /**
+     * Sets the number of triangles per block of the {@link TriangleBlocks} in which the leaves that
+     * consist of several {@link MeshTriangle}s are stored, to intersect all triangles of a leaf in one
+     * loop. With 0, the objects of all leaves are intersected one by one. Takes effect when the
+     * tree is built.
+     */
+    public void setTriangleBlockWidth(int width)
+    {
+        if (width < 0) throw new IllegalArgumentException("Width must not be negative: " + width);
+        this.triangleBlockWidth = width;
+    }
+
+    /**
+     * If false, the tree is built in the calling thread only, without splitting the work of large nodes
+     * into tasks. The tree is the same either way.
+     */
+    public void setParallelBuild(boolean parallelBuild)
+    {
+        this.parallelBuild = parallelBuild;
+    }
+
+    /**
+     * Returns the number of bytes written by {@link #write(ByteBuffer)}.
+     */
+    int serializedSize()
+    {
+        return 4 * (3 + 6 + 3 + nodeData.length + nodeSplits.length + leafObjects.length);
+    }
+
+    /**
+     * Writes the built tree to {@param buffer}. The objects themselves are not written,
+     * the leaves refer to them by their position in the aggregate.
+     */
+    void write(ByteBuffer buffer)
+    {
+        buffer.putInt(splitMethod.ordinal());
+        buffer.putInt(maxDepth);
+        buffer.putInt(maxObjectsPerNode);
+        for (float f : rootBounds)
+        {
+            buffer.putFloat(f);
+        }
+        AcceleratorCache.putInts(buffer, nodeData);
+        AcceleratorCache.putFloats(buffer, nodeSplits);
+        AcceleratorCache.putInts(buffer, leafObjects);
     }
 
-    private BSPNode buildTree(Aggregate objects, AABoundingBox boundingBox, Axis currentAxis, float depth)
+    /**
+     * Reads a tree written by {@link #write(ByteBuffer)} for the aggregate {@param objects}.
+     * The result can be used for intersection tests right away, without calling {@link #construct()}.
+     *
+     * @throws IllegalArgumentException     If the tree does not match the objects.
+     */
+    static BSPAccelerator read(ByteBuffer buffer, Aggregate objects)
     {
-        if (depth == maxDepth || objects.count() <= maxObjectsPerNode)
+        SplitMethod splitMethod = SplitMethod.values()[buffer.getInt()];
+        int maxDepth = buffer.getInt();
+        int maxObjectsPerNode = buffer.getInt();
+
+        BSPAccelerator accelerator = new BSPAccelerator(objects, maxObjectsPerNode, maxDepth);
+        accelerator.splitMethod = splitMethod;
+        accelerator.rootBounds = new float[6];
+        for (int i = 0; i < 6; i++)
+        {
+            accelerator.rootBounds[i] = buffer.getFloat();
+        }
+        accelerator.nodeData = AcceleratorCache.getInts(buffer);
+        accelerator.nodeSplits = AcceleratorCache.getFloats(buffer);
+        accelerator.leafObjects = AcceleratorCache.getInts(buffer);
+        accelerator.numNodes = accelerator.nodeSplits.length;
+        accelerator.numLeafObjects = accelerator.leafObjects.length;
+
+        int n = objects.count();
+        accelerator.primitives = new Intersectable[n];
+        Iterator<Intersectable> iterator = objects.iterator();
+        for (int i = 0; i < n; i++)
+        {
+            accelerator.primitives[i] = iterator.next();
+        }
+        for (int p : accelerator.leafObjects)
+        {
+            if (p < 0 || p >= n) throw new IllegalArgumentException("Tree refers to object " + p + " of " + n);
+        }
+        if (accelerator.numNodes == 0 || accelerator.nodeData.length != 2 * accelerator.numNodes)
+        {
+            throw new IllegalArgumentException("Inconsistent number of nodes");
+        }
+        accelerator.checkNodes();
+        accelerator.buildTriangleBlocks();
+        return accelerator;
+    }
+
+    /**
+     * Checks that the nodes read by {@link #read(ByteBuffer, Aggregate)} refer to existing nodes and objects,
+     * such that a corrupt tree is rejected before it is traversed. Both children of an inner node follow it,
+     * so the traversal cannot loop.
+     *
+     * @throws IllegalArgumentException     If a node refers outside of the tree.
+     */
+    private void checkNodes()
+    {
+        for (int node = 0; node < numNodes; node++)
+        {
+            int first = nodeData[2 * node], second = nodeData[2 * node + 1];
+            if (second >= 0)
+            {   // Leaf with its offset and number of objects
+                if (first < 0 || first > leafObjects.length - second)
+                {
+                    throw new IllegalArgumentException("Leaf " + node + " refers to objects outside of the tree");
+                }
+            }
+            else if (second < -3 || first <= node + 1 || first >= numNodes)
+            {   // Inner node with the node above the split plane and the axis, the node below follows directly
+                throw new IllegalArgumentException("Inner node " + node + " refers to nodes outside of the tree");
+            }
+        }
+    }
+
+    /**
+     * Packs the tree rooted at {@param root} into the flat arrays used for traversal.
+     */
+    private void compile(BSPNode root)
+    {
+        numNodes = 0;
+        numLeafObjects = 0;
+        countNodes(root);
+
+        nodeData = new int[2 * numNodes];
+        nodeSplits = new float[numNodes];
+        leafObjects = new int[numLeafObjects];
+
+        AABoundingBox bb = root.getBoundingBox();
+        rootBounds = new float[] { bb.xmin(), bb.ymin(), bb.zmin(), bb.xmax(), bb.ymax(), bb.zmax() };
+
+        numNodes = 0;
+        numLeafObjects = 0;
+        compileNode(root);
+
+        buildTriangleBlocks();
+    }
+
+    /**
+     * Copies the triangles of the leaves that only contain {@link MeshTriangle}s into {@link #triangleBlocks}.
+     * Leaves with a single object are left as they are, they do not gain from the blocks.
+     */
+    private void buildTriangleBlocks()
+    {
+        triangleBlocks = null;
+        leafBlocks = null;
+        if (triangleBlockWidth == 0)
+        {
+            return;
+        }
+
+        TriangleBlocks blocks = new TriangleBlocks(triangleBlockWidth);
+        int[] starts = new int[numNodes];
+        Arrays.fill(starts, -1);
+        MeshTriangle[] triangles = new MeshTriangle[0];
+        for (int node = 0; node < numNodes; node++)
+        {
+            int count = nodeData[2 * node + 1];
+            if (count < 2)
+            {
+                continue;
+            }
+            int offset = nodeData[2 * node];
+            if (triangles.length < count)
+            {
+                triangles = new MeshTriangle[count];
+            }
+            int i = 0;
+            while (i < count && primitives[leafObjects[offset + i]] instanceof MeshTriangle)
+            {
+                triangles[i] = (MeshTriangle) primitives[leafObjects[offset + i]];
+                i++;
+            }
+            if (i == count)
+            {
+                starts[node] = blocks.add(triangles, count);
+            }
+        }
+        triangleBlocks = blocks;
+        leafBlocks = starts;
+    }
+
+    private void countNodes(BSPNode node)
+    {
+        numNodes++;
+        if (node.isLeaf())
+        {
+            numLeafObjects += ((BSPLeaf) node).objectIndices.length;
+            return;
+        }
+        countNodes(node.below);
+        countNodes(node.above);
+    }
+
+    private int compileNode(BSPNode node)
+    {
+        int index = numNodes++;
+
+        if (node.isLeaf())
+        {
+            int[] indices = ((BSPLeaf) node).objectIndices;
+            nodeData[2 * index] = numLeafObjects;
+            nodeData[2 * index + 1] = indices.length;
+            System.arraycopy(indices, 0, leafObjects, numLeafObjects, indices.length);
+            numLeafObjects += indices.length;
+            return index;
+        }
+
+        compileNode(node.below);
+        int above = compileNode(node.above);
+        nodeData[2 * index] = above;
+        nodeData[2 * index + 1] = -(node.axis.getIndex() + 1);
+        nodeSplits[index] = node.planePos;
+        return index;
+    }
+
+    private BSPNode buildTree(int[] prims, AABoundingBox boundingBox, Axis currentAxis, int depth, int badRefines)
+    {
+        SplitPlane split;
+        if (splitMethod == SplitMethod.SAH)
+        {
+            split = findSAHSplitPlane(prims, boundingBox, depth, badRefines);
+        }
+        else
+        {
+            split = findSplitPlane(prims, currentAxis, depth);
+        }
+
+        if (split == null)
         {   // Stopping criteria are met: Create leaf node
-            BSPLeaf current = new BSPLeaf(boundingBox, objects);
-            return current;
+            return new BSPLeaf(boundingBox, prims);
         }
 
         /*
          *  Split the bounding box into left and right
          */
-        float splitPos = findSplitPlane(objects, currentAxis);
-
-        AABoundingBox[] boxes = boundingBox.split(currentAxis, splitPos);
+        AABoundingBox[] boxes = boundingBox.split(split.axis, split.position);
         AABoundingBox leftBB = boxes[0];
         AABoundingBox rightBB = boxes[1];
 
@@ -74,166 +435,918 @@ public class BSPAccelerator implements Intersectable
         /*
          * Collect objects for the left and right half
          */
-        IntersectableList leftObjs = new IntersectableList();
-        IntersectableList rightObjs = new IntersectableList();
-        Iterator<Intersectable> iterator = objects.iterator();
-        while (iterator.hasNext())
+        int[][] halves = partition(prims, split.axis.getIndex(), split.position);
+
+        /*
+         *  Recursively build the sub-tree on the left and right node
+         */
+        BSPNode left, right;
+        if (parallelBuild && prims.length >= ParallelBuild.SUBTREE_CUTOFF)
+        {
+            BuildTask leftTask = new BuildTask(halves[0], leftBB, nextAxis, depth + 1, split.badRefines);
+            leftTask.fork();
+            right = buildTree(halves[1], rightBB, nextAxis, depth + 1, split.badRefines);
+            left = leftTask.join();
+        }
+        else
         {
-            Intersectable object = iterator.next();
-            AABoundingBox bb = object.getBoundingBox();
+            left = buildTree(halves[0], leftBB, nextAxis, depth + 1, split.badRefines);
+            right = buildTree(halves[1], rightBB, nextAxis, depth + 1, split.badRefines);
+        }
+
+        BSPNode current = new BSPNode(split.position, split.axis, boundingBox);
+        current.below = left;
+        current.above = right;
+
+        return current;
+    }
 
-            if (bb.isIntersecting(leftBB))
+    /**
+     * Splits {@param prims} into the objects below and above the split {@param position} on axis {@param a}.
+     * Objects touching both halves are contained in both. The objects keep their relative order, also when
+     * large nodes are partitioned in parallel.
+     *
+     * @return  The objects below and the objects above the split.
+     */
+    private int[][] partition(final int[] prims, final int a, final float position)
+    {
+        if (!parallelBuild || prims.length < ParallelBuild.PARTITION_CUTOFF)
+        {
+            int numLeft = 0, numRight = 0;
+            for (int p : prims)
             {
-                leftObjs.add(object);
+                if (isBelow(p, a, position)) numLeft++;
+                if (isAbove(p, a, position)) numRight++;
             }
-            if (bb.isIntersecting(rightBB))
+            int[] leftObjs = new int[numLeft];
+            int[] rightObjs = new int[numRight];
+            numLeft = 0;
+            numRight = 0;
+            for (int p : prims)
             {
-                rightObjs.add(object);
+                if (isBelow(p, a, position)) leftObjs[numLeft++] = p;
+                if (isAbove(p, a, position)) rightObjs[numRight++] = p;
             }
+            return new int[][] { leftObjs, rightObjs };
         }
 
         /*
-         *  Recursively build the sub-tree on the left and right node
+         * Count the objects of each chunk in parallel, then every chunk writes its objects
+         * to the offsets given by the counts of the preceding chunks.
          */
-        BSPNode left = buildTree(leftObjs, leftBB, nextAxis, depth + 1);
-        BSPNode right = buildTree(rightObjs, rightBB, nextAxis, depth + 1);
+        int numChunks = (prims.length + ParallelBuild.PARTITION_CHUNK_SIZE - 1) / ParallelBuild.PARTITION_CHUNK_SIZE;
+        final int[] leftOffsets = new int[numChunks + 1];
+        final int[] rightOffsets = new int[numChunks + 1];
 
-        BSPNode current = new BSPNode(splitPos, currentAxis, boundingBox);
-        current.below = left;
-        current.above = right;
+        List<RecursiveAction> tasks = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c++)
+        {
+            final int chunk = c;
+            final int from = c * ParallelBuild.PARTITION_CHUNK_SIZE;
+            final int to = Math.min(prims.length, from + ParallelBuild.PARTITION_CHUNK_SIZE);
+            tasks.add(new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    int numLeft = 0, numRight = 0;
+                    for (int i = from; i < to; i++)
+                    {
+                        if (isBelow(prims[i], a, position)) numLeft++;
+                        if (isAbove(prims[i], a, position)) numRight++;
+                    }
+                    leftOffsets[chunk + 1] = numLeft;
+                    rightOffsets[chunk + 1] = numRight;
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
 
-        return current;
+        for (int c = 0; c < numChunks; c++)
+        {
+            leftOffsets[c + 1] += leftOffsets[c];
+            rightOffsets[c + 1] += rightOffsets[c];
+        }
+        final int[] leftObjs = new int[leftOffsets[numChunks]];
+        final int[] rightObjs = new int[rightOffsets[numChunks]];
+
+        tasks.clear();
+        for (int c = 0; c < numChunks; c++)
+        {
+            final int chunk = c;
+            final int from = c * ParallelBuild.PARTITION_CHUNK_SIZE;
+            final int to = Math.min(prims.length, from + ParallelBuild.PARTITION_CHUNK_SIZE);
+            tasks.add(new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    int numLeft = leftOffsets[chunk], numRight = rightOffsets[chunk];
+                    for (int i = from; i < to; i++)
+                    {
+                        if (isBelow(prims[i], a, position)) leftObjs[numLeft++] = prims[i];
+                        if (isAbove(prims[i], a, position)) rightObjs[numRight++] = prims[i];
+                    }
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        return new int[][] { leftObjs, rightObjs };
+    }
+
+    /**
+     * Returns true if the object {@param p} belongs to the half below the split {@param position} on axis {@param a}.
+     * With {@link SplitMethod#MEAN} every object touching the closed half space is included, with {@link SplitMethod#SAH}
+     * only objects reaching into the open half space, or lying flat in the split plane, are included.
+     */
+    private boolean isBelow(int p, int a, float position)
+    {
+        float min = bounds[6 * p + a];
+        if (splitMethod == SplitMethod.MEAN) return min <= position;
+        float max = bounds[6 * p + 3 + a];
+        return min < position || max == position;
     }
 
+    /**
+     * Returns true if the object {@param p} belongs to the half above the split {@param position} on axis {@param a}.
+     * @see #isBelow(int, int, float)
+     */
+    private boolean isAbove(int p, int a, float position)
+    {
+        float max = bounds[6 * p + 3 + a];
+        if (splitMethod == SplitMethod.MEAN) return max >= position;
+        return max > position;
+    }
 
     /**
      * Accelerated intersection test by kd-tree traversal.
-     * The tree must be built with {@link #construct(Aggregate)} beforehand.
+     * The tree must be built with {@link #construct()} beforehand.
+     * The traversal does not allocate, it uses the {@link TraversalStack} of the current thread.
      */
     @Override
     public HitRecord intersect(Ray r)
     {
-        HitRecord closest = null;
-        Stack<BSPStackItem> stack = new Stack<>();
-        BSPNode node = root;
-        float isect = Float.MAX_VALUE;
-        float[] interval = root.intersect(r);
+        float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+        float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+        float invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
 
-        if (interval == null) {
-            // Ray did not intersect with  bounding box of root node
+        /*
+         * Slab test with the bounding box of the root node
+         */
+        float t1 = (rootBounds[0] - ox) * invX;
+        float t2 = (rootBounds[3] - ox) * invX;
+        float tmin = Math.min(t1, t2);
+        float tmax = Math.max(t1, t2);
+        t1 = (rootBounds[1] - oy) * invY;
+        t2 = (rootBounds[4] - oy) * invY;
+        tmin = Math.max(tmin, Math.min(t1, t2));
+        tmax = Math.min(tmax, Math.max(t1, t2));
+        t1 = (rootBounds[2] - oz) * invZ;
+        t2 = (rootBounds[5] - oz) * invZ;
+        tmin = Math.max(tmin, Math.min(t1, t2));
+        tmax = Math.min(tmax, Math.max(t1, t2));
+
+        tmin = Math.max(tmin, r.tmin);
+        tmax = Math.min(tmax, r.tmax);
+
+        if (!(tmin <= tmax) || tmax < 0)
+        {   // Interval of the ray does not overlap with the bounding box of the root node
             return null;
         }
 
-        float tmin = interval[0];
-        float tmax = interval[1];
+        HitRecord closest = null;
+        boolean deferred = false;
+        int node = 0;
 
-        while(node != null)
+        TraversalStack stack = TraversalStack.get();
+        int base = stack.size;
+        PrimitiveHit primitiveHit = stack.acquireHit();
+        try
         {
-            if( isect < tmin ) break;
-            if( !node.isLeaf() )
+            while (true)
             {
-                float tsplit = computeRaySplitPlaneIntersection(r, node);
-
-                // order children
-                BSPNode first, second;
-                if(node.axis.getValue(r.origin) < node.planePos )
+                if (r.tmax < tmin) break; // The closest hit so far is before the node
+                int info = nodeData[2 * node + 1];
+                if (info < 0)
                 {
-                    first = node.below;
-                    second = node.above;
+                    int axis = -info - 1;
+                    float o = axis == 0 ? ox : (axis == 1 ? oy : oz);
+                    float d = axis == 0 ? dx : (axis == 1 ? dy : dz);
+                    float inv = axis == 0 ? invX : (axis == 1 ? invY : invZ);
+                    float planePos = nodeSplits[node];
+                    float tsplit = d != 0 ? (planePos - o) * inv : Float.POSITIVE_INFINITY;
+
+                    // Order children, a ray starting on the plane visits the side it points to first
+                    int below = node + 1;
+                    int above = nodeData[2 * node];
+                    int first, second;
+                    if (o < planePos || (o == planePos && d <= 0))
+                    {
+                        first = below;
+                        second = above;
+                    }
+                    else
+                    {
+                        first = above;
+                        second = below;
+                    }
+
+                    // Process children
+                    if (tsplit > tmax || tsplit <= 0)
+                    {   // case 1: only first child is hit
+                        node = first;
+                    }
+                    else if (tsplit < tmin)
+                    {   // case 2: only second child is hit
+                        node = second;
+                    }
+                    else
+                    {   // case 3: both children are hit
+                        stack.push(second, tsplit, tmax);
+                        node = first;
+                        tmax = tsplit;
+                    }
                 }
                 else
                 {
-                    first = node.above;
-                    second = node.below;
+                    if (leafBlocks != null && leafBlocks[node] >= 0)
+                    {   // All objects of the leaf are triangles, they are intersected in one loop
+                        if (triangleBlocks.intersect(leafBlocks[node], info, r, primitiveHit)) deferred = true;
+                    }
+                    else
+                    {
+                        int offset = nodeData[2 * node];
+                        for (int i = offset; i < offset + info; i++)
+                        {
+                            // Every hit shrinks the interval of the ray, farther objects are rejected early
+                            Intersectable object = primitives[leafObjects[i]];
+                            if (object instanceof DeferredIntersectable)
+                            {
+                                if (((DeferredIntersectable) object).intersect(r, primitiveHit)) deferred = true;
+                            }
+                            else
+                            {
+                                HitRecord hit = object.intersect(r);
+                                if (hit != null)
+                                {
+                                    closest = hit;
+                                    deferred = false;
+                                }
+                            }
+                        }
+                    }
+                    if (stack.size == base)
+                    {   // No more nodes to visit
+                        break;
+                    }
+                    stack.size--;
+                    node = stack.nodes[stack.size];
+                    tmin = stack.tmin[stack.size];
+                    tmax = stack.tmax[stack.size];
                 }
+            }
+
+            // Make the hit record only for the closest hit
+            if (deferred)
+            {
+                closest = primitiveHit.makeHitRecord(r);
+            }
+        }
+        finally
+        {
+            stack.size = base;
+            stack.releaseHit();
+        }
+        return closest;
+    }
 
-                // process children
-                if( tsplit > tmax || tsplit < 0 || (Math.abs(tsplit) < EPSILON && first.intersect(r) != null))
-                { // case 1: only first child is hit
-                    node = first;
+    /**
+     * Occlusion test by kd-tree traversal, which stops at the first object that blocks the ray.
+     * The nodes are visited in the same order as in {@link #intersect(Ray)}, such that nearby
+     * objects, which are the most likely to block the ray, are tested first.
+     */
+    @Override
+    public boolean isOccluded(Ray r)
+    {
+        float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+        float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+        float invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+
+        float t1 = (rootBounds[0] - ox) * invX;
+        float t2 = (rootBounds[3] - ox) * invX;
+        float tmin = Math.min(t1, t2);
+        float tmax = Math.max(t1, t2);
+        t1 = (rootBounds[1] - oy) * invY;
+        t2 = (rootBounds[4] - oy) * invY;
+        tmin = Math.max(tmin, Math.min(t1, t2));
+        tmax = Math.min(tmax, Math.max(t1, t2));
+        t1 = (rootBounds[2] - oz) * invZ;
+        t2 = (rootBounds[5] - oz) * invZ;
+        tmin = Math.max(tmin, Math.min(t1, t2));
+        tmax = Math.min(tmax, Math.max(t1, t2));
+        tmin = Math.max(tmin, r.tmin);
+        tmax = Math.min(tmax, r.tmax);
+
+        if (!(tmin <= tmax) || tmax < 0)
+        {   // Interval of the ray does not overlap with the bounding box of the root node
+            return false;
+        }
+
+        int node = 0;
+
+        TraversalStack stack = TraversalStack.get();
+        int base = stack.size;
+        // Receives the hits with the triangle blocks, which are not used
+        PrimitiveHit blockHit = Scratch.get().hit;
+        try
+        {
+            while (true)
+            {
+                int info = nodeData[2 * node + 1];
+                if (info < 0)
+                {
+                    int axis = -info - 1;
+                    float o = axis == 0 ? ox : (axis == 1 ? oy : oz);
+                    float d = axis == 0 ? dx : (axis == 1 ? dy : dz);
+                    float inv = axis == 0 ? invX : (axis == 1 ? invY : invZ);
+                    float planePos = nodeSplits[node];
+                    float tsplit = d != 0 ? (planePos - o) * inv : Float.POSITIVE_INFINITY;
+
+                    int below = node + 1;
+                    int above = nodeData[2 * node];
+                    int first, second;
+                    if (o < planePos || (o == planePos && d <= 0))
+                    {
+                        first = below;
+                        second = above;
+                    }
+                    else
+                    {
+                        first = above;
+                        second = below;
+                    }
+
+                    if (tsplit > tmax || tsplit <= 0)
+                    {
+                        node = first;
+                    }
+                    else if (tsplit < tmin)
+                    {
+                        node = second;
+                    }
+                    else
+                    {
+                        stack.push(second, tsplit, tmax);
+                        node = first;
+                        tmax = tsplit;
+                    }
                 }
-                else if(tsplit < tmin || (Math.abs(tsplit) < EPSILON && second.intersect(r) != null))
-                { // case 2: only second child is hit
-                    node = second;
+                else
+                {
+                    if (leafBlocks != null && leafBlocks[node] >= 0)
+                    {
+                        if (triangleBlocks.isOccluded(leafBlocks[node], info, r, blockHit))
+                        {
+                            return true;
+                        }
+                    }
+                    else if (isOccluded(r, nodeData[2 * node], info))
+                    {
+                        return true;
+                    }
+                    if (stack.size == base)
+                    {
+                        return false;
+                    }
+                    stack.size--;
+                    node = stack.nodes[stack.size];
+                    tmin = stack.tmin[stack.size];
+                    tmax = stack.tmax[stack.size];
+                }
+            }
+        }
+        finally
+        {
+            stack.size = base;
+        }
+    }
+
+    /**
+     * Intersects a packet of rays by a single traversal of the tree for all rays. The traversal works
+     * with bounds of the rays instead of the rays themselves: the smallest and largest origin and inverse
+     * direction on each axis bound the t at which the rays cross a split plane, and a child is visited if
+     * it overlaps with the frustum the rays span. This costs the same for any number of rays. In the
+     * leaves, the objects are intersected ray by ray, with the rays that have not found a closer hit.
+     * <p>
+     * This requires that the rays cross the split planes in the same order, that is, the signs of the
+     * components of their directions agree. Packets where this is not the case, and small packets,
+     * are traversed ray by ray.
+     */
+    @Override
+    public void intersect(RayPacket packet)
+    {
+        if (!isCoherent(packet))
+        {
+            packet.intersectEach(this);
+            return;
+        }
+        traverse(packet);
+    }
+
+    /**
+     * Returns true, if the packet is large enough to be traversed together and the directions of all
+     * rays point to the same octant.
+     */
+    private static boolean isCoherent(RayPacket packet)
+    {
+        int n = packet.size;
+        if (n < MIN_PACKET_SIZE) return false;
+        boolean x = packet.dx[0] > 0, y = packet.dy[0] > 0, z = packet.dz[0] > 0;
+        for (int i = 0; i < n; i++)
+        {
+            // Rays that are parallel to an axis, or almost so, have no finite inverse direction
+            if (Math.abs(packet.dx[i]) < Float.MIN_NORMAL || Math.abs(packet.dy[i]) < Float.MIN_NORMAL
+                    || Math.abs(packet.dz[i]) < Float.MIN_NORMAL) return false;
+            if (packet.dx[i] > 0 != x || packet.dy[i] > 0 != y || packet.dz[i] > 0 != z) return false;
+        }
+        return true;
+    }
+
+    private void traverse(RayPacket packet)
+    {
+        int n = packet.size;
+        PacketState state = PacketState.get();
+        boolean[] active = state.active;
+        boolean[] deferred = state.deferred;
+
+        /*
+         * Slab test of every ray with the bounding box of the root node, and bounds of the rays that pass
+         * through it: the segment [tmin, tmax] that contains the segments of all rays, and the smallest and
+         * largest components of the origins and inverse directions, stored as x, y, z.
+         */
+        float tmin = Float.POSITIVE_INFINITY, tmax = Float.NEGATIVE_INFINITY;
+        float oMinX = Float.POSITIVE_INFINITY, oMinY = Float.POSITIVE_INFINITY, oMinZ = Float.POSITIVE_INFINITY;
+        float oMaxX = Float.NEGATIVE_INFINITY, oMaxY = Float.NEGATIVE_INFINITY, oMaxZ = Float.NEGATIVE_INFINITY;
+        float invMinX = Float.POSITIVE_INFINITY, invMinY = Float.POSITIVE_INFINITY, invMinZ = Float.POSITIVE_INFINITY;
+        float invMaxX = Float.NEGATIVE_INFINITY, invMaxY = Float.NEGATIVE_INFINITY, invMaxZ = Float.NEGATIVE_INFINITY;
+        int remaining = 0;
+        for (int i = 0; i < n; i++)
+        {
+            deferred[i] = false;
+            float ox = packet.ox[i], oy = packet.oy[i], oz = packet.oz[i];
+            float invX = 1 / packet.dx[i], invY = 1 / packet.dy[i], invZ = 1 / packet.dz[i];
+
+            float t1 = (rootBounds[0] - ox) * invX;
+            float t2 = (rootBounds[3] - ox) * invX;
+            float near = Math.min(t1, t2);
+            float far = Math.max(t1, t2);
+            t1 = (rootBounds[1] - oy) * invY;
+            t2 = (rootBounds[4] - oy) * invY;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            t1 = (rootBounds[2] - oz) * invZ;
+            t2 = (rootBounds[5] - oz) * invZ;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            near = Math.max(near, packet.tmin[i]);
+            far = Math.min(far, packet.tmax[i]);
+
+            active[i] = near <= far && far >= 0;
+            if (!active[i]) continue;
+            remaining++;
+            tmin = Math.min(tmin, near);
+            tmax = Math.max(tmax, far);
+            oMinX = Math.min(oMinX, ox);
+            oMinY = Math.min(oMinY, oy);
+            oMinZ = Math.min(oMinZ, oz);
+            oMaxX = Math.max(oMaxX, ox);
+            oMaxY = Math.max(oMaxY, oy);
+            oMaxZ = Math.max(oMaxZ, oz);
+            invMinX = Math.min(invMinX, invX);
+            invMinY = Math.min(invMinY, invY);
+            invMinZ = Math.min(invMinZ, invZ);
+            invMaxX = Math.max(invMaxX, invX);
+            invMaxY = Math.max(invMaxY, invY);
+            invMaxZ = Math.max(invMaxZ, invZ);
+        }
+        if (remaining == 0) return;
+
+        // The rays cross the planes of each axis in the same order
+        boolean positiveX = packet.dx[0] > 0, positiveY = packet.dy[0] > 0, positiveZ = packet.dz[0] > 0;
+        // The farthest t up to which a ray still needs to look for a closer hit
+        float farthest = tmax;
+
+        TraversalStack stack = TraversalStack.get();
+        int base = stack.size;
+        Scratch scratch = Scratch.get();
+        Ray r = scratch.acquireRay();
+        int node = 0;
+        try
+        {
+            while (true)
+            {
+                int info = nodeData[2 * node + 1];
+                if (info < 0)
+                {
+                    int axis = -info - 1;
+                    boolean positive = axis == 0 ? positiveX : (axis == 1 ? positiveY : positiveZ);
+                    float oMin = axis == 0 ? oMinX : (axis == 1 ? oMinY : oMinZ);
+                    float oMax = axis == 0 ? oMaxX : (axis == 1 ? oMaxY : oMaxZ);
+                    float invMin = axis == 0 ? invMinX : (axis == 1 ? invMinY : invMinZ);
+                    float invMax = axis == 0 ? invMaxX : (axis == 1 ? invMaxY : invMaxZ);
+                    float planePos = nodeSplits[node];
+
+                    // Bounds of the t at which the rays cross the plane, the product is extremal at the corners
+                    float a = (planePos - oMin) * invMin, b = (planePos - oMin) * invMax;
+                    float c = (planePos - oMax) * invMin, d = (planePos - oMax) * invMax;
+                    float tsplitMin = Math.min(Math.min(a, b), Math.min(c, d));
+                    float tsplitMax = Math.max(Math.max(a, b), Math.max(c, d));
+
+                    // A ray first passes the part of its segment before the plane. Nodes beyond the
+                    // closest hits of all rays are not visited.
+                    int below = node + 1;
+                    int above = nodeData[2 * node];
+                    int first = positive ? below : above;
+                    int second = positive ? above : below;
+                    float end = Math.min(tmax, farthest);
+                    boolean visitFirst = tmin <= Math.min(end, tsplitMax);
+                    boolean visitSecond = Math.max(tmin, tsplitMin) <= end;
+
+                    if (visitFirst)
+                    {
+                        if (visitSecond) stack.push(second, Math.max(tmin, tsplitMin), end);
+                        node = first;
+                        tmax = Math.min(end, tsplitMax);
+                        continue;
+                    }
+                    if (visitSecond)
+                    {
+                        node = second;
+                        tmin = Math.max(tmin, tsplitMin);
+                        tmax = end;
+                        continue;
+                    }
                 }
                 else
-                { // case 3: both children are hit
-                    node = first;
-                    BSPStackItem item = new BSPStackItem();
-                    item.node = second;
-                    item.tmin = tsplit;
-                    item.tmax = tmax;
-                    stack.push(item);
-                    tmax = tsplit;
+                {
+                    int offset = nodeData[2 * node];
+                    int blocks = leafBlocks != null ? leafBlocks[node] : -1;
+                    farthest = Float.NEGATIVE_INFINITY;
+                    for (int i = 0; i < n; i++)
+                    {
+                        if (!active[i]) continue;
+                        if (packet.tmax[i] < tmin)
+                        {   // The ray has a closer hit than the leaf
+                            farthest = Math.max(farthest, packet.tmax[i]);
+                            continue;
+                        }
+                        if (blocks >= 0)
+                        {
+                            if (triangleBlocks.intersect(blocks, info, packet, i, state.hits[i])) deferred[i] = true;
+                            farthest = Math.max(farthest, packet.tmax[i]);
+                        }
+                        else
+                        {
+                            packet.getRay(i, r);
+                            for (int j = offset; j < offset + info; j++)
+                            {
+                                Intersectable object = primitives[leafObjects[j]];
+                                if (object instanceof DeferredIntersectable)
+                                {
+                                    if (((DeferredIntersectable) object).intersect(r, state.hits[i])) deferred[i] = true;
+                                }
+                                else
+                                {
+                                    HitRecord hit = object.intersect(r);
+                                    if (hit != null)
+                                    {
+                                        packet.hits[i] = hit;
+                                        deferred[i] = false;
+                                    }
+                                }
+                            }
+                            packet.tmax[i] = r.tmax;
+                            farthest = Math.max(farthest, r.tmax);
+                        }
+                    }
                 }
 
+                // Continue with the next node on the stack
+                if (stack.size == base) break;
+                stack.size--;
+                node = stack.nodes[stack.size];
+                tmin = stack.tmin[stack.size];
+                tmax = stack.tmax[stack.size];
             }
-            else
+
+            // Make the hit records only for the closest hits
+            for (int i = 0; i < n; i++)
             {
-                HitRecord hit = node.objects.intersect(r);
-                if (hit != null && hit.t < isect && hit.t > 0)
+                if (deferred[i])
                 {
-                    closest = hit;
-                    isect = closest.t;
+                    packet.getRay(i, r);
+                    packet.hits[i] = state.hits[i].makeHitRecord(r);
                 }
-                if (stack.isEmpty())
-                { // No intersection
-                    break;
-                }
-                BSPStackItem i = stack.pop();
-                node = i.node;
-                tmin = i.tmin;
-                tmax = i.tmax;
             }
         }
-        return closest;
+        finally
+        {
+            stack.size = base;
+            scratch.releaseRay();
+        }
+    }
+
+    /**
+     * Returns true, if one of the {@param count} objects starting at {@param offset} in {@link #leafObjects} blocks the ray.
+     */
+    private boolean isOccluded(Ray r, int offset, int count)
+    {
+        for (int i = offset; i < offset + count; i++)
+        {
+            if (primitives[leafObjects[i]].isOccluded(r))
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public AABoundingBox getBoundingBox()
     {
-        return root.getBoundingBox();
+        return new AABoundingBox(rootBounds[0], rootBounds[3], rootBounds[1], rootBounds[4], rootBounds[2], rootBounds[5]);
     }
 
-    private float findSplitPlane(Aggregate objects, Axis axis)
+    /**
+     * Places the split plane at the mean of the object centers on the {@param axis}.
+     *
+     * @return  null, if the node should become a leaf.
+     */
+    private SplitPlane findSplitPlane(int[] prims, Axis axis, int depth)
     {
+        if (depth == maxDepth || prims.length <= maxObjectsPerNode)
+        {
+            return null;
+        }
 
-        AABoundingBox bbox = null;
+        int a = axis.getIndex();
+        float centerOfMass = 0;
+        for (int p : prims)
+        {
+            float min = bounds[6 * p + a];
+            float max = bounds[6 * p + 3 + a];
+            centerOfMass += min + 0.5f * (max - min);
+        }
+        centerOfMass *= 1f / prims.length;
 
-        Point3f centerOfMass = new Point3f();
-        int numObjects = 0;
-        Iterator<Intersectable> iterator = objects.iterator();
-        while (iterator.hasNext())
+        return new SplitPlane(axis, centerOfMass, 0);
+    }
+
+    /**
+     * Finds the split plane with the lowest cost according to the surface area heuristic.
+     * All three axes are considered, and the candidate positions are the bounding box boundaries of the objects.
+     *
+     * @return  null, if no split is cheaper than intersecting all objects of the node.
+     */
+    private SplitPlane findSAHSplitPlane(int[] prims, AABoundingBox boundingBox, int depth, int badRefines)
+    {
+        int n = prims.length;
+        if (n <= maxObjectsPerNode || depth >= maxDepth)
+        {
+            return null;
+        }
+
+        float[] lo = { boundingBox.xmin(), boundingBox.ymin(), boundingBox.zmin() };
+        float[] hi = { boundingBox.xmax(), boundingBox.ymax(), boundingBox.zmax() };
+        float[] d = { hi[0] - lo[0], hi[1] - lo[1], hi[2] - lo[2] };
+        float totalArea = 2 * (d[0] * d[1] + d[0] * d[2] + d[1] * d[2]);
+        if (!(totalArea > 0))
+        {
+            return null;
+        }
+
+        /*
+         * Sweep all axes, in parallel for large nodes. Among equally good splits the first axis wins,
+         * the same as in a sequential sweep.
+         */
+        SplitCandidate[] candidates = new SplitCandidate[3];
+        if (parallelBuild && n >= ParallelBuild.PARTITION_CUTOFF)
+        {
+            List<RecursiveTask<SplitCandidate>> tasks = new ArrayList<>(3);
+            for (int a = 0; a < 3; a++)
+            {
+                tasks.add(new SweepTask(prims, a, lo, hi, d, totalArea));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            for (int a = 0; a < 3; a++)
+            {
+                candidates[a] = tasks.get(a).join();
+            }
+        }
+        else
+        {
+            for (int a = 0; a < 3; a++)
+            {
+                candidates[a] = sweepSAH(prims, a, lo, hi, d, totalArea);
+            }
+        }
+
+        float bestCost = Float.POSITIVE_INFINITY;
+        float bestPosition = 0;
+        int bestAxis = -1;
+        for (int a = 0; a < 3; a++)
+        {
+            if (candidates[a] != null && candidates[a].cost < bestCost)
+            {
+                bestCost = candidates[a].cost;
+                bestPosition = candidates[a].position;
+                bestAxis = a;
+            }
+        }
+
+        if (bestAxis == -1)
+        {
+            return null;
+        }
+
+        // Allow a few splits that do not pay off immediately, they might lead to better splits further down
+        float leafCost = SAH_INTERSECTION_COST * n;
+        if (bestCost > leafCost) badRefines++;
+        if ((bestCost > 4 * leafCost && n < 16) || badRefines == 3)
+        {
+            return null;
+        }
+
+        return new SplitPlane(Axis.values()[bestAxis], bestPosition, badRefines);
+    }
+
+    /**
+     * Finds the split position with the lowest SAH cost on the axis {@param a}.
+     *
+     * @return  null, if the node cannot be split on this axis.
+     */
+    private SplitCandidate sweepSAH(int[] prims, int a, float[] lo, float[] hi, float[] d, float totalArea)
+    {
+        if (!(d[a] > 0)) return null;
+
+        int n = prims.length;
+        float[] mins = new float[n];
+        float[] maxs = new float[n];
+        float[] flats = new float[n];
+
+        int o0 = (a + 1) % 3;
+        int o1 = (a + 2) % 3;
+        float capArea = d[o0] * d[o1];
+        float sideLength = d[o0] + d[o1];
+
+        int numFlats = 0;
+        for (int i = 0; i < n; i++)
+        {
+            mins[i] = bounds[6 * prims[i] + a];
+            maxs[i] = bounds[6 * prims[i] + 3 + a];
+            if (mins[i] == maxs[i]) flats[numFlats++] = mins[i];
+        }
+        Arrays.sort(mins);
+        Arrays.sort(maxs);
+        Arrays.sort(flats, 0, numFlats);
+
+        SplitCandidate best = null;
+
+        /*
+         * Sweep over all distinct boundary positions. At position t, the objects below are
+         * the ones starting before t and the ones lying flat in t, the objects above are the
+         * ones ending after t.
+         */
+        int iMin = 0, iMax = 0, iFlat = 0;
+        while (iMin < n || iMax < n)
         {
-            AABoundingBox b = iterator.next().getBoundingBox();
-            centerOfMass.add(b.center());
-            numObjects++;
+            float t = Math.min(iMin < n ? mins[iMin] : Float.POSITIVE_INFINITY, iMax < n ? maxs[iMax] : Float.POSITIVE_INFINITY);
+
+            int startingBefore = iMin;
+            while (iMin < n && mins[iMin] == t) iMin++;
+            while (iMax < n && maxs[iMax] == t) iMax++;
+            while (iFlat < numFlats && flats[iFlat] < t) iFlat++;
+            int flatsAtT = 0;
+            while (iFlat < numFlats && flats[iFlat] == t)
+            {
+                iFlat++;
+                flatsAtT++;
+            }
+
+            if (t > lo[a] && t < hi[a])
+            {
+                int numBelow = startingBefore + flatsAtT;
+                int numAbove = n - iMax;
+
+                float areaBelow = 2 * (capArea + (t - lo[a]) * sideLength);
+                float areaAbove = 2 * (capArea + (hi[a] - t) * sideLength);
+                float emptyBonus = (numBelow == 0 || numAbove == 0) ? SAH_EMPTY_BONUS : 0;
+                float cost = SAH_TRAVERSAL_COST + SAH_INTERSECTION_COST * (1 - emptyBonus)
+                        * (areaBelow * numBelow + areaAbove * numAbove) / totalArea;
+
+                if (best == null)
+                {
+                    best = new SplitCandidate(cost, t);
+                }
+                else if (cost < best.cost)
+                {
+                    best.cost = cost;
+                    best.position = t;
+                }
+            }
         }
-        centerOfMass.scale(1f / numObjects);
+        return best;
+    }
+
+    /**
+     * A split plane chosen during construction.
+     */
+    private static class SplitPlane
+    {
+        Axis axis;
+        float position;
+
+        /**
+         * The number of splits on the path from the root that were more expensive than a leaf.
+         */
+        int badRefines;
 
-        return axis.getValue(centerOfMass);
+        SplitPlane(Axis axis, float position, int badRefines)
+        {
+            this.axis = axis;
+            this.position = position;
+            this.badRefines = badRefines;
+        }
     }
 
-    private float computeRaySplitPlaneIntersection(Ray r, BSPNode node)
+    /**
+     * The cheapest split position found on a single axis.
+     */
+    private static class SplitCandidate
     {
-        if (node.isLeaf()) {
-            // no split plane exists for leafs
-            return Float.NaN;
+        float cost;
+        float position;
+
+        SplitCandidate(float cost, float position)
+        {
+            this.cost = cost;
+            this.position = position;
         }
-        assert node.axis != null;
+    }
+
+    /**
+     * Builds a sub-tree as a fork/join task.
+     */
+    @SuppressWarnings("serial")
+    private class BuildTask extends RecursiveTask<BSPNode>
+    {
+        private final int[] prims;
+        private final AABoundingBox boundingBox;
+        private final Axis axis;
+        private final int depth, badRefines;
 
-        float o = node.axis.getValue(r.origin);
-        float d = node.axis.getValue(r.direction);
+        BuildTask(int[] prims, AABoundingBox boundingBox, Axis axis, int depth, int badRefines)
+        {
+            this.prims = prims;
+            this.boundingBox = boundingBox;
+            this.axis = axis;
+            this.depth = depth;
+            this.badRefines = badRefines;
+        }
 
-        return (node.planePos - o) / d;
+        @Override
+        protected BSPNode compute()
+        {
+            return buildTree(prims, boundingBox, axis, depth, badRefines);
+        }
     }
 
     /**
-     * A simple stack item used to calculate intersections.
+     * Sweeps a single axis of a large node as a fork/join task.
      */
-    class BSPStackItem
+    @SuppressWarnings("serial")
+    private class SweepTask extends RecursiveTask<SplitCandidate>
     {
-        BSPNode node;
-        float tmin, tmax, tsplit;
+        private final int[] prims;
+        private final int axis;
+        private final float[] lo, hi, d;
+        private final float totalArea;
+
+        SweepTask(int[] prims, int axis, float[] lo, float[] hi, float[] d, float totalArea)
+        {
+            this.prims = prims;
+            this.axis = axis;
+            this.lo = lo;
+            this.hi = hi;
+            this.d = d;
+            this.totalArea = totalArea;
+        }
+
+        @Override
+        protected SplitCandidate compute()
+        {
+            return sweepSAH(prims, axis, lo, hi, d, totalArea);
+        }
     }
 }
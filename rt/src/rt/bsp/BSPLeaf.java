@@ -9,6 +9,11 @@ import rt.intersectables.Aggregate;
  */
 public class BSPLeaf extends BSPNode {
 
+    /**
+     * The indices of the objects during construction, used to compile the tree.
+     */
+    int[] objectIndices;
+
     /**
      * Creates a new leaf node.
      *
@@ -20,6 +25,18 @@ public class BSPLeaf extends BSPNode {
         this.objects = objects;
     }
 
+    /**
+     * Creates a new leaf node that only refers to its objects by their indices, as built by the
+     * {@link BSPAccelerator}, whose leaves do not need an aggregate of their own.
+     *
+     * @param boundingBox   The bounding box of this node.
+     * @param objectIndices The indices of the objects that intersect with the {@param boundingBox} of this node.
+     */
+    BSPLeaf(AABoundingBox boundingBox, int[] objectIndices) {
+        this.bb = boundingBox;
+        this.objectIndices = objectIndices;
+    }
+
     @Override
     public boolean isLeaf()
     {
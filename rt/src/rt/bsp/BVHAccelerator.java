@@ -0,0 +1,657 @@
+package rt.bsp;
+
+import rt.DeferredIntersectable;
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.PrimitiveHit;
+import rt.Ray;
+import rt.intersectables.Aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Implements an acceleration structure using a bounding volume hierarchy (BVH).
+ * In contrast to the {@link BSPAccelerator}, every object is referenced by exactly one leaf,
+ * the bounding boxes of sibling nodes may overlap instead. The hierarchy is built with the
+ * surface area heuristic evaluated over a fixed number of bins per axis.
+ * <p>
+ * The nodes are stored depth-first in flat arrays: the left child of an inner node directly
+ * follows its parent, only the index of the right child is stored.
+ */
+public class BVHAccelerator implements Intersectable
+{
+
+    /**
+     * Estimated cost of traversing an inner node, relative to {@link #SAH_INTERSECTION_COST}.
+     */
+    public static final float SAH_TRAVERSAL_COST = 0.125f;
+
+    /**
+     * Estimated cost of intersecting a ray with a single object.
+     */
+    public static final float SAH_INTERSECTION_COST = 1;
+
+    /**
+     * Number of bins per axis in which the candidate splits are evaluated.
+     */
+    public static final int NUM_BINS = 16;
+
+    /**
+     * Maximum depth of the tree.
+     */
+    static final int MAX_DEPTH = 64;
+
+    private int maxObjectsPerLeaf;
+    private Aggregate objects;
+
+    /**
+     * The objects, ordered such that every leaf references a contiguous range.
+     */
+    private Intersectable[] primitives;
+
+    /**
+     * The bounding box of every node, stored as xmin, ymin, zmin, xmax, ymax, zmax consecutively.
+     */
+    private float[] nodeBounds;
+
+    /**
+     * Two integers per node. For a leaf: the offset of its first object and the number of objects.
+     * For an inner node: the index of the right child and -(axis + 1) of the split axis.
+     */
+    private int[] nodeData;
+
+    /**
+     * The bounds and centroids of the objects, only needed during construction.
+     */
+    private float[] bounds, centroids;
+    private int[] order;
+
+    private boolean parallelBuild = true;
+
+    /**
+     * Initializes an acceleration structure.
+     * @param objects               An aggregate of objects.
+     * @param maxObjectsPerLeaf     Nodes with more objects are always split. Smaller nodes are only split if the split pays off.
+     */
+    public BVHAccelerator(Aggregate objects, int maxObjectsPerLeaf)
+    {
+        this.objects = objects;
+        this.maxObjectsPerLeaf = maxObjectsPerLeaf;
+    }
+
+    /**
+     * Initializes an acceleration structure with a default leaf size.
+     * @param objects               An aggregate of objects.
+     */
+    public BVHAccelerator(Aggregate objects)
+    {
+        this(objects, 4);
+    }
+
+    /**
+     * If false, the hierarchy is built in the calling thread only, without splitting the work of large nodes
+     * into tasks. The hierarchy is the same either way.
+     */
+    public void setParallelBuild(boolean parallelBuild)
+    {
+        this.parallelBuild = parallelBuild;
+    }
+
+    /**
+     * Recursively constructs the acceleration structure.
+     * The sub-trees of large nodes are built in parallel, the resulting hierarchy does not depend on the number of threads.
+     */
+    public void construct()
+    {
+        int n = objects.count();
+        Intersectable[] unordered = new Intersectable[n];
+        bounds = new float[6 * n];
+        centroids = new float[3 * n];
+        order = new int[n];
+
+        Iterator<Intersectable> iterator = objects.iterator();
+        for (int i = 0; i < n; i++)
+        {
+            unordered[i] = iterator.next();
+            AABoundingBox b = unordered[i].getBoundingBox();
+            bounds[6 * i] = b.xmin();
+            bounds[6 * i + 1] = b.ymin();
+            bounds[6 * i + 2] = b.zmin();
+            bounds[6 * i + 3] = b.xmax();
+            bounds[6 * i + 4] = b.ymax();
+            bounds[6 * i + 5] = b.zmax();
+            for (int a = 0; a < 3; a++)
+            {
+                centroids[3 * i + a] = 0.5f * (bounds[6 * i + a] + bounds[6 * i + 3 + a]);
+            }
+            order[i] = i;
+        }
+
+        NodeArrays nodes = ParallelBuild.invoke(new BuildTask(0, n, 0));
+        nodeBounds = Arrays.copyOf(nodes.bounds, 6 * nodes.size);
+        nodeData = Arrays.copyOf(nodes.data, 2 * nodes.size);
+
+        primitives = new Intersectable[n];
+        for (int i = 0; i < n; i++)
+        {
+            primitives[i] = unordered[order[i]];
+        }
+
+        bounds = null;
+        centroids = null;
+        order = null;
+    }
+
+    /**
+     * Builds the sub-tree for the objects order[start] to order[end - 1] into new node arrays.
+     */
+    private NodeArrays buildSubtree(int start, int end, int depth)
+    {
+        NodeArrays nodes = new NodeArrays(Math.max(1, 2 * (end - start) - 1));
+        buildTree(nodes, start, end, depth);
+        return nodes;
+    }
+
+    /**
+     * Builds the sub-tree for the objects order[start] to order[end - 1], appending its nodes to {@param nodes}.
+     *
+     * @return  The index of the created node.
+     */
+    private int buildTree(NodeArrays nodes, int start, int end, int depth)
+    {
+        int node = nodes.size++;
+        computeBounds(nodes.bounds, node, start, end);
+
+        int n = end - start;
+        int axis = -1;
+        int mid = start;
+
+        if (n > 1 && depth < MAX_DEPTH - 1)
+        {
+            // Find the bin boundary with the lowest cost
+            float[] cmin = new float[3];
+            float[] cmax = new float[3];
+            centroidBounds(start, end, cmin, cmax);
+
+            float nodeArea = area(nodes.bounds, node);
+            float[][] binCosts = new float[3][];
+            if (parallelBuild && n >= ParallelBuild.PARTITION_CUTOFF)
+            {   // Bin the axes in parallel
+                List<RecursiveTask<float[]>> tasks = new ArrayList<>(3);
+                for (int a = 0; a < 3; a++)
+                {
+                    tasks.add(new BinTask(start, end, a, cmin[a], cmax[a], nodeArea));
+                }
+                ForkJoinTask.invokeAll(tasks);
+                for (int a = 0; a < 3; a++)
+                {
+                    binCosts[a] = tasks.get(a).join();
+                }
+            }
+            else
+            {
+                for (int a = 0; a < 3; a++)
+                {
+                    binCosts[a] = evaluateBins(start, end, a, cmin[a], cmax[a], nodeArea);
+                }
+            }
+
+            float bestCost = Float.POSITIVE_INFINITY;
+            int bestBin = -1;
+            for (int a = 0; a < 3; a++)
+            {
+                if (binCosts[a] == null) continue;
+
+                for (int b = 0; b < NUM_BINS - 1; b++)
+                {
+                    if (binCosts[a][b] < bestCost)
+                    {
+                        bestCost = binCosts[a][b];
+                        bestBin = b;
+                        axis = a;
+                    }
+                }
+            }
+
+            float leafCost = SAH_INTERSECTION_COST * n;
+            if (axis != -1 && (n > maxObjectsPerLeaf || bestCost < leafCost))
+            {
+                mid = partition(start, end, axis, bestBin, cmin[axis], cmax[axis]);
+            }
+            else
+            {
+                axis = -1;
+            }
+        }
+
+        if (axis == -1)
+        {   // Create leaf node
+            nodes.data[2 * node] = start;
+            nodes.data[2 * node + 1] = n;
+            return node;
+        }
+
+        int right;
+        if (parallelBuild && n >= ParallelBuild.SUBTREE_CUTOFF)
+        {   // Build both halves into separate arrays in parallel and append them in depth-first order
+            BuildTask leftTask = new BuildTask(start, mid, depth + 1);
+            leftTask.fork();
+            NodeArrays rightNodes = buildSubtree(mid, end, depth + 1);
+            nodes.append(leftTask.join());
+            right = nodes.append(rightNodes);
+        }
+        else
+        {
+            buildTree(nodes, start, mid, depth + 1);
+            right = buildTree(nodes, mid, end, depth + 1);
+        }
+        nodes.data[2 * node] = right;
+        nodes.data[2 * node + 1] = -(axis + 1);
+        return node;
+    }
+
+    /**
+     * Returns the SAH cost of splitting after each of the first {@link #NUM_BINS} - 1 bins along the axis {@param a}.
+     * The cost is relative to the surface area {@param nodeArea} of the node.
+     *
+     * @return  null, if the centroids do not extend along the axis.
+     */
+    private float[] evaluateBins(int start, int end, int a, float cmin, float cmax, float nodeArea)
+    {
+        if (!(cmax > cmin)) return null;
+
+        int[] counts = new int[NUM_BINS];
+        float[] binBounds = new float[6 * NUM_BINS];
+        for (int b = 0; b < NUM_BINS; b++)
+        {
+            emptyBox(binBounds, b);
+        }
+
+        float scale = NUM_BINS / (cmax - cmin);
+        for (int i = start; i < end; i++)
+        {
+            int p = order[i];
+            int b = binIndex(centroids[3 * p + a], cmin, scale);
+            counts[b]++;
+            enlarge(binBounds, b, bounds, p);
+        }
+
+        // Sweep from the left and from the right to get the area and count on both sides of every boundary
+        float[] costs = new float[NUM_BINS - 1];
+        float[] box = new float[6];
+        emptyBox(box, 0);
+        int count = 0;
+        for (int b = 0; b < NUM_BINS - 1; b++)
+        {
+            enlarge(box, 0, binBounds, b);
+            count += counts[b];
+            // Boundaries with an empty side are no valid splits
+            costs[b] = count > 0 ? count * area(box, 0) : Float.POSITIVE_INFINITY;
+        }
+        emptyBox(box, 0);
+        count = 0;
+        for (int b = NUM_BINS - 1; b > 0; b--)
+        {
+            enlarge(box, 0, binBounds, b);
+            count += counts[b];
+            costs[b - 1] += count > 0 ? count * area(box, 0) : Float.POSITIVE_INFINITY;
+        }
+
+        for (int b = 0; b < NUM_BINS - 1; b++)
+        {
+            costs[b] = nodeArea > 0 ? SAH_TRAVERSAL_COST + SAH_INTERSECTION_COST * costs[b] / nodeArea : Float.POSITIVE_INFINITY;
+        }
+        return costs;
+    }
+
+    /**
+     * Reorders order[start] to order[end - 1] such that the objects in the bins up to {@param bin} come first.
+     *
+     * @return  The index of the first object in the right half.
+     */
+    private int partition(int start, int end, int a, int bin, float cmin, float cmax)
+    {
+        float scale = NUM_BINS / (cmax - cmin);
+        int i = start;
+        int j = end - 1;
+        while (i <= j)
+        {
+            if (binIndex(centroids[3 * order[i] + a], cmin, scale) <= bin)
+            {
+                i++;
+            }
+            else
+            {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    private static int binIndex(float centroid, float cmin, float scale)
+    {
+        return Math.max(0, Math.min(NUM_BINS - 1, (int) ((centroid - cmin) * scale)));
+    }
+
+    private void computeBounds(float[] boxes, int node, int start, int end)
+    {
+        emptyBox(boxes, node);
+        for (int i = start; i < end; i++)
+        {
+            enlarge(boxes, node, bounds, order[i]);
+        }
+    }
+
+    private void centroidBounds(int start, int end, float[] cmin, float[] cmax)
+    {
+        Arrays.fill(cmin, Float.POSITIVE_INFINITY);
+        Arrays.fill(cmax, Float.NEGATIVE_INFINITY);
+        for (int i = start; i < end; i++)
+        {
+            int p = order[i];
+            for (int a = 0; a < 3; a++)
+            {
+                cmin[a] = Math.min(cmin[a], centroids[3 * p + a]);
+                cmax[a] = Math.max(cmax[a], centroids[3 * p + a]);
+            }
+        }
+    }
+
+    private static void emptyBox(float[] boxes, int i)
+    {
+        for (int a = 0; a < 3; a++)
+        {
+            boxes[6 * i + a] = Float.POSITIVE_INFINITY;
+            boxes[6 * i + 3 + a] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Enlarges box {@param i} in {@param boxes} such that it contains box {@param j} in {@param other}.
+     */
+    private static void enlarge(float[] boxes, int i, float[] other, int j)
+    {
+        for (int a = 0; a < 3; a++)
+        {
+            boxes[6 * i + a] = Math.min(boxes[6 * i + a], other[6 * j + a]);
+            boxes[6 * i + 3 + a] = Math.max(boxes[6 * i + 3 + a], other[6 * j + 3 + a]);
+        }
+    }
+
+    private static float area(float[] boxes, int i)
+    {
+        float dx = boxes[6 * i + 3] - boxes[6 * i];
+        float dy = boxes[6 * i + 4] - boxes[6 * i + 1];
+        float dz = boxes[6 * i + 5] - boxes[6 * i + 2];
+        if (!(dx >= 0)) return 0;
+        return 2 * (dx * dy + dx * dz + dy * dz);
+    }
+
+    /**
+     * Accelerated intersection test by traversing the hierarchy front to back.
+     * The hierarchy must be built with {@link #construct()} beforehand.
+     * The traversal does not allocate, it uses the {@link TraversalStack} of the current thread.
+     */
+    @Override
+    public HitRecord intersect(Ray r)
+    {
+        float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+        float invX = 1 / r.direction.x, invY = 1 / r.direction.y, invZ = 1 / r.direction.z;
+        int negative = (invX < 0 ? 1 : 0) | (invY < 0 ? 2 : 0) | (invZ < 0 ? 4 : 0);
+
+        if (primitives.length == 0) return null;
+
+        HitRecord closest = null;
+        boolean deferred = false;
+
+        TraversalStack stack = TraversalStack.get();
+        int base = stack.size;
+        PrimitiveHit primitiveHit = stack.acquireHit();
+        int node = 0;
+
+        try
+        {
+            while (true)
+            {
+                if (intersectBox(node, ox, oy, oz, invX, invY, invZ, r.tmin, r.tmax))
+                {
+                    int count = nodeData[2 * node + 1];
+                    if (count > 0)
+                    {   // Leaf: intersect all objects
+                        int offset = nodeData[2 * node];
+                        for (int i = offset; i < offset + count; i++)
+                        {
+                            // Every hit shrinks the interval of the ray, farther objects are rejected early
+                            Intersectable object = primitives[i];
+                            if (object instanceof DeferredIntersectable)
+                            {
+                                if (((DeferredIntersectable) object).intersect(r, primitiveHit)) deferred = true;
+                            }
+                            else
+                            {
+                                HitRecord hit = object.intersect(r);
+                                if (hit != null)
+                                {
+                                    closest = hit;
+                                    deferred = false;
+                                }
+                            }
+                        }
+                    }
+                    else
+                    {   // Inner node: visit the child closer to the ray origin first
+                        int right = nodeData[2 * node];
+                        if ((negative & (1 << (-count - 1))) != 0)
+                        {
+                            stack.push(node + 1);
+                            node = right;
+                        }
+                        else
+                        {
+                            stack.push(right);
+                            node = node + 1;
+                        }
+                        continue;
+                    }
+                }
+                if (stack.size == base) break;
+                stack.size--;
+                node = stack.nodes[stack.size];
+            }
+
+            // Make the hit record only for the closest hit
+            if (deferred)
+            {
+                closest = primitiveHit.makeHitRecord(r);
+            }
+        }
+        finally
+        {
+            stack.size = base;
+            stack.releaseHit();
+        }
+        return closest;
+    }
+
+    /**
+     * Occlusion test by traversing the hierarchy, which stops at the first object that blocks the ray.
+     */
+    @Override
+    public boolean isOccluded(Ray r)
+    {
+        float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+        float invX = 1 / r.direction.x, invY = 1 / r.direction.y, invZ = 1 / r.direction.z;
+        int negative = (invX < 0 ? 1 : 0) | (invY < 0 ? 2 : 0) | (invZ < 0 ? 4 : 0);
+
+        if (primitives.length == 0) return false;
+
+        TraversalStack stack = TraversalStack.get();
+        int base = stack.size;
+        int node = 0;
+
+        try
+        {
+            while (true)
+            {
+                if (intersectBox(node, ox, oy, oz, invX, invY, invZ, r.tmin, r.tmax))
+                {
+                    int count = nodeData[2 * node + 1];
+                    if (count > 0)
+                    {
+                        int offset = nodeData[2 * node];
+                        for (int i = offset; i < offset + count; i++)
+                        {
+                            if (primitives[i].isOccluded(r)) return true;
+                        }
+                    }
+                    else
+                    {
+                        int right = nodeData[2 * node];
+                        if ((negative & (1 << (-count - 1))) != 0)
+                        {
+                            stack.push(node + 1);
+                            node = right;
+                        }
+                        else
+                        {
+                            stack.push(right);
+                            node = node + 1;
+                        }
+                        continue;
+                    }
+                }
+                if (stack.size == base) return false;
+                stack.size--;
+                node = stack.nodes[stack.size];
+            }
+        }
+        finally
+        {
+            stack.size = base;
+        }
+    }
+
+    /**
+     * Slab test of the ray against the bounding box of {@param node}, limited to the ray segment ({@param tmin}, {@param tmax}).
+     */
+    private boolean intersectBox(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float tmin, float tmax)
+    {
+        int i = 6 * node;
+        float tx1 = (nodeBounds[i] - ox) * invX;
+        float tx2 = (nodeBounds[i + 3] - ox) * invX;
+        float tminBox = Math.min(tx1, tx2);
+        float tmaxBox = Math.max(tx1, tx2);
+
+        float ty1 = (nodeBounds[i + 1] - oy) * invY;
+        float ty2 = (nodeBounds[i + 4] - oy) * invY;
+        tminBox = Math.max(tminBox, Math.min(ty1, ty2));
+        tmaxBox = Math.min(tmaxBox, Math.max(ty1, ty2));
+
+        float tz1 = (nodeBounds[i + 2] - oz) * invZ;
+        float tz2 = (nodeBounds[i + 5] - oz) * invZ;
+        tminBox = Math.max(tminBox, Math.min(tz1, tz2));
+        tmaxBox = Math.min(tmaxBox, Math.max(tz1, tz2));
+
+        return tmaxBox >= Math.max(tminBox, tmin) && tminBox <= tmax;
+    }
+
+    @Override
+    public AABoundingBox getBoundingBox()
+    {
+        return new AABoundingBox(nodeBounds[0], nodeBounds[3], nodeBounds[1], nodeBounds[4], nodeBounds[2], nodeBounds[5]);
+    }
+
+    /**
+     * Node arrays with the same layout as {@link #nodeBounds} and {@link #nodeData}, used during construction.
+     * A sub-tree that is built in parallel gets its own arrays, which are appended to the arrays of its parent.
+     */
+    private static class NodeArrays
+    {
+        float[] bounds;
+        int[] data;
+        int size;
+
+        /**
+         * @param capacity  The maximum number of nodes, a sub-tree with n objects has at most 2n - 1 nodes.
+         */
+        NodeArrays(int capacity)
+        {
+            bounds = new float[6 * capacity];
+            data = new int[2 * capacity];
+        }
+
+        /**
+         * Appends the nodes of {@param other}, adjusting the indices of the right children.
+         *
+         * @return  The index of the first appended node.
+         */
+        int append(NodeArrays other)
+        {
+            int offset = size;
+            System.arraycopy(other.bounds, 0, bounds, 6 * offset, 6 * other.size);
+            System.arraycopy(other.data, 0, data, 2 * offset, 2 * other.size);
+            for (int i = offset; i < offset + other.size; i++)
+            {
+                if (data[2 * i + 1] < 0) data[2 * i] += offset;
+            }
+            size += other.size;
+            return offset;
+        }
+    }
+
+    /**
+     * Builds a sub-tree as a fork/join task.
+     */
+    @SuppressWarnings("serial")
+    private class BuildTask extends RecursiveTask<NodeArrays>
+    {
+        private final int start, end, depth;
+
+        BuildTask(int start, int end, int depth)
+        {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        @Override
+        protected NodeArrays compute()
+        {
+            return buildSubtree(start, end, depth);
+        }
+    }
+
+    /**
+     * Evaluates the bins of a single axis of a large node as a fork/join task.
+     */
+    @SuppressWarnings("serial")
+    private class BinTask extends RecursiveTask<float[]>
+    {
+        private final int start, end, axis;
+        private final float cmin, cmax, nodeArea;
+
+        BinTask(int start, int end, int axis, float cmin, float cmax, float nodeArea)
+        {
+            this.start = start;
+            this.end = end;
+            this.axis = axis;
+            this.cmin = cmin;
+            this.cmax = cmax;
+            this.nodeArea = nodeArea;
+        }
+
+        @Override
+        protected float[] compute()
+        {
+            return evaluateBins(start, end, axis, cmin, cmax, nodeArea);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package rt.bsp;
+
+import rt.PrimitiveHit;
+import rt.RayPacket;
+
+/**
+ * The per-ray values of a traversal of an acceleration structure with a {@link RayPacket}. Like the
+ * {@link TraversalStack}, which holds the nodes that remain to be visited, every thread owns one, which
+ * is reused by all packet traversals of that thread. Packet traversals do not nest, since the objects
+ * in the leaves are intersected ray by ray.
+ */
+final class PacketState
+{
+    private static final ThreadLocal<PacketState> states = new ThreadLocal<PacketState>()
+    {
+        @Override
+        protected PacketState initialValue()
+        {
+            return new PacketState();
+        }
+    };
+
+    /**
+     * The rays that pass through the bounding box of the root node.
+     */
+    final boolean[] active = new boolean[RayPacket.CAPACITY];
+
+    /**
+     * The closest hits of the rays with objects that defer making the hit record.
+     */
+    final PrimitiveHit[] hits = new PrimitiveHit[RayPacket.CAPACITY];
+    final boolean[] deferred = new boolean[RayPacket.CAPACITY];
+
+    private PacketState()
+    {
+        for (int i = 0; i < hits.length; i++)
+        {
+            hits[i] = new PrimitiveHit();
+        }
+    }
+
+    /**
+     * Returns the state of the current thread.
+     */
+    static PacketState get()
+    {
+        return states.get();
+    }
+}
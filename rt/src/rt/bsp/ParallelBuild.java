@@ -0,0 +1,49 @@
+package rt.bsp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The fork/join pool shared by the parallel construction of the acceleration structures.
+ * Both children of a large node are built as separate tasks, and the per-node work on the
+ * objects of the top levels of the tree is split into tasks as well. Small nodes are built
+ * sequentially, because the overhead of a task would dominate.
+ */
+final class ParallelBuild
+{
+    /**
+     * Nodes with at least this many objects build their two children in parallel.
+     */
+    static final int SUBTREE_CUTOFF = 1024;
+
+    /**
+     * Nodes with at least this many objects also evaluate and partition their objects in parallel.
+     */
+    static final int PARTITION_CUTOFF = 32768;
+
+    /**
+     * The number of objects processed by a single task when partitioning in parallel.
+     */
+    static final int PARTITION_CHUNK_SIZE = 8192;
+
+    /**
+     * Uses one worker thread per available core. The workers are daemon threads,
+     * so the pool does not keep the application alive.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    private ParallelBuild() {}
+
+    /**
+     * Runs {@param task} in the shared pool and waits for its result. When called from a task
+     * that is already running in a fork/join pool, the task is executed in that pool instead.
+     */
+    static <T> T invoke(ForkJoinTask<T> task)
+    {
+        if (ForkJoinTask.inForkJoinPool())
+        {
+            return task.invoke();
+        }
+        return pool.invoke(task);
+    }
+}
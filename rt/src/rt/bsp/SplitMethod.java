@@ -0,0 +1,20 @@
+package rt.bsp;
+
+/**
+ * Strategies for choosing the split planes when building a {@link BSPAccelerator}.
+ */
+public enum SplitMethod {
+
+    /**
+     * Splits at the mean of the object centers and cycles through the axes X -> Y -> Z.
+     * The tree is terminated by a maximum depth and a maximum number of objects per node.
+     */
+    MEAN,
+
+    /**
+     * Chooses the axis and position of every split by minimizing the surface area heuristic (SAH).
+     * Candidate positions are the bounding box edges of the objects in a node. A node becomes a leaf
+     * when splitting it is estimated to be more expensive than intersecting all of its objects.
+     */
+    SAH
+}
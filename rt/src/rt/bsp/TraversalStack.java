@@ -0,0 +1,94 @@
+package rt.bsp;
+
+import rt.PrimitiveHit;
+
+import java.util.Arrays;
+
+/**
+ * A stack of nodes with their ray segments [tmin, tmax] used to traverse the acceleration structures.
+ * Every thread owns one stack, which is reused by all traversals of that thread, so that tracing a ray
+ * does not allocate. Nested traversals, e.g. of an accelerator referenced by an instance inside another
+ * accelerator, push on top of the entries of the outer traversal and remove them again when they finish.
+ * The stack also holds the {@link PrimitiveHit} in which each traversal records its closest hit.
+ */
+final class TraversalStack
+{
+    private static final int INITIAL_SIZE = 64;
+
+    private static final ThreadLocal<TraversalStack> stacks = new ThreadLocal<TraversalStack>()
+    {
+        @Override
+        protected TraversalStack initialValue()
+        {
+            return new TraversalStack();
+        }
+    };
+
+    int[] nodes = new int[INITIAL_SIZE];
+    float[] tmin = new float[INITIAL_SIZE];
+    float[] tmax = new float[INITIAL_SIZE];
+
+    /**
+     * The number of entries on the stack, including the entries of enclosing traversals.
+     */
+    int size;
+
+    /**
+     * Closest hits of the traversals in progress, one per nesting level.
+     */
+    private PrimitiveHit[] hits = new PrimitiveHit[0];
+    private int numHits;
+
+    private TraversalStack() {}
+
+    /**
+     * Returns the stack of the current thread.
+     */
+    static TraversalStack get()
+    {
+        return stacks.get();
+    }
+
+    void push(int node, float tmin, float tmax)
+    {
+        if (size == nodes.length)
+        {
+            grow();
+        }
+        this.nodes[size] = node;
+        this.tmin[size] = tmin;
+        this.tmax[size] = tmax;
+        size++;
+    }
+
+    void push(int node)
+    {
+        push(node, 0, 0);
+    }
+
+    /**
+     * Returns an object to record the closest hit of a traversal. Every call must be
+     * followed by {@link #releaseHit()} when the traversal is finished.
+     */
+    PrimitiveHit acquireHit()
+    {
+        if (numHits == hits.length)
+        {
+            hits = Arrays.copyOf(hits, numHits + 1);
+            hits[numHits] = new PrimitiveHit();
+        }
+        return hits[numHits++];
+    }
+
+    void releaseHit()
+    {
+        numHits--;
+    }
+
+    private void grow()
+    {
+        nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+        tmin = Arrays.copyOf(tmin, 2 * tmin.length);
+        tmax = Arrays.copyOf(tmax, 2 * tmax.length);
+    }
+}
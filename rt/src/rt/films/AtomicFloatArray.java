@@ -0,0 +1,42 @@
+package rt.films;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An array of floats whose elements can be accumulated atomically by several threads without locking.
+ * The floats are stored as their raw int bits, and additions are done with a compare-and-set loop,
+ * which only retries if another thread changed the same element in the meantime.
+ */
+final class AtomicFloatArray
+{
+    private final AtomicIntegerArray bits;
+
+    AtomicFloatArray(int length)
+    {
+        // Zero bits are 0.0f, so no initialization is needed
+        bits = new AtomicIntegerArray(length);
+    }
+
+    int length()
+    {
+        return bits.length();
+    }
+
+    float get(int i)
+    {
+        return Float.intBitsToFloat(bits.get(i));
+    }
+
+    void add(int i, float delta)
+    {
+        while (true)
+        {
+            int current = bits.get(i);
+            int next = Float.floatToRawIntBits(Float.intBitsToFloat(current) + delta);
+            if (bits.compareAndSet(i, current, next))
+            {
+                return;
+            }
+        }
+    }
+}
@@ -7,46 +7,52 @@ import rt.Spectrum;
  * Uses a box filter when accumulating samples on a film. A box filter means
  * that samples contribute only to the pixel that they lie in. Sample values
  * are simply averaged.
+ * <p>
+ * The sums of the samples and the number of samples are stored in one flat
+ * float array per channel, so a pixel costs four floats and adding a sample
+ * does not allocate. The averages are only computed in {@link #getImage()}.
  */
 public class BoxFilterFilm implements Film {
 	
-	private Spectrum[][] image;
 	public int width, height;
-	private Spectrum[][] unnormalized;
-	private float nSamples[][];
+	private float[] red, green, blue;
+	private float[] nSamples;
+	
+	/**
+	 * Sums of the normalized images added with {@link #add(Film)}. Allocated on first use.
+	 */
+	private float[] added;
 	
 	public BoxFilterFilm(int width, int height)
 	{
 		this.width = width;
 		this.height = height;
-		image = new Spectrum[width][height];
-		unnormalized = new Spectrum[width][height];
-		nSamples = new float[width][height];
-		
-		for(int i=0; i<width; i++)
-		{
-			for(int j=0; j<height; j++)
-			{
-				image[i][j] = new Spectrum();
-				unnormalized[i][j] = new Spectrum();
-			}
-		}
+		red = new float[width*height];
+		green = new float[width*height];
+		blue = new float[width*height];
+		nSamples = new float[width*height];
 	}
 	
 	public void addSample(double x, double y, Spectrum s)
 	{
 		if((int)x>=0 && (int)x<width && (int)y>=0 && (int)y<height)
 		{
-			int idx_x = (int)x;
-			int idx_y = (int)y;
-			unnormalized[idx_x][idx_y].add(s);
-			nSamples[idx_x][idx_y]++;
-
-			image[idx_x][idx_y] = new Spectrum(unnormalized[idx_x][idx_y]);
-			image[idx_x][idx_y].mult(1f / nSamples[idx_x][idx_y]);
+			int idx = (int)y*width + (int)x;
+			red[idx] += s.r;
+			green[idx] += s.g;
+			blue[idx] += s.b;
+			nSamples[idx]++;
 		}
 	}
 	
+	/**
+	 * Returns the number of samples of the pixel with index @param idx = y*width + x.
+	 */
+	protected float getSampleCount(int idx)
+	{
+		return nSamples[idx];
+	}
+
 	public int getWidth()
 	{
 		return width;
@@ -57,8 +63,35 @@ public class BoxFilterFilm implements Film {
 		return height;
 	}
 
+	/**
+	 * Computes the average of the samples in each pixel. The returned 
+	 * image is a copy, so it may be modified freely.
+	 */
 	public Spectrum[][] getImage()
 	{
+		Spectrum[][] image = new Spectrum[width][height];
+		for(int j=0; j<height; j++)
+		{
+			for(int i=0; i<width; i++)
+			{
+				int idx = j*width + i;
+				Spectrum s = new Spectrum();
+				if(nSamples[idx] > 0)
+				{
+					float n = 1f / nSamples[idx];
+					s.r = red[idx] * n;
+					s.g = green[idx] * n;
+					s.b = blue[idx] * n;
+				}
+				if(added != null)
+				{
+					s.r += added[3*idx];
+					s.g += added[3*idx+1];
+					s.b += added[3*idx+2];
+				}
+				image[i][j] = s;
+			}
+		}
 		return image;
 	}
 
@@ -67,13 +100,19 @@ public class BoxFilterFilm implements Film {
 	{
 		assert film.getHeight() == this.getHeight() && film.getWidth() == this.getWidth();
 
+		if(added == null)
+			added = new float[3*width*height];
+
 		Spectrum[][] im = film.getImage();
 
 		for(int i = 0; i < getWidth(); i++)
 		{
 			for(int j = 0; j < getHeight(); j++)
 			{
-				image[i][j].add(im[i][j]);
+				int idx = 3*(j*width + i);
+				added[idx] += im[i][j].r;
+				added[idx+1] += im[i][j].g;
+				added[idx+2] += im[i][j].b;
 			}
 		}
 	}
@@ -0,0 +1,124 @@
+package rt.films;
+
+import rt.Film;
+import rt.Spectrum;
+
+/**
+ * A {@link BoxFilterFilm} that can be written by several render threads at the same time.
+ * <p>
+ * The sum of the samples and the number of samples of each pixel are stored next to each
+ * other in a primitive float array and are accumulated atomically, without locking. Threads
+ * writing to different pixels therefore never wait for each other, and threads writing to the
+ * same pixel never lose a sample. The averaged image is only computed in {@link #getImage()}.
+ */
+public class ConcurrentBoxFilterFilm implements Film
+{
+    private final int width, height;
+
+    /**
+     * The r, g and b sums and the sample count of each pixel, row by row.
+     */
+    private final AtomicFloatArray accumulated;
+
+    /**
+     * The images added with {@link #add(Film)}, as r, g and b of each pixel. Allocated on first use.
+     */
+    private volatile AtomicFloatArray added;
+
+    public ConcurrentBoxFilterFilm(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        accumulated = new AtomicFloatArray(4 * width * height);
+    }
+
+    @Override
+    public void addSample(double x, double y, Spectrum s)
+    {
+        int _x = (int) x;
+        int _y = (int) y;
+        if(_x >= 0 && _x < width && _y >= 0 && _y < height)
+        {
+            int i = 4 * (_y * width + _x);
+            accumulated.add(i, s.r);
+            accumulated.add(i + 1, s.g);
+            accumulated.add(i + 2, s.b);
+            accumulated.add(i + 3, 1);
+        }
+    }
+
+    /**
+     * Computes the average of the samples of each pixel. The returned image is a snapshot and
+     * is not updated by samples added afterwards.
+     */
+    @Override
+    public Spectrum[][] getImage()
+    {
+        AtomicFloatArray added = this.added;
+        Spectrum[][] image = new Spectrum[width][height];
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int k = j * width + i;
+                float n = accumulated.get(4 * k + 3);
+                Spectrum s = new Spectrum();
+                if(n > 0)
+                {
+                    s.r = accumulated.get(4 * k) / n;
+                    s.g = accumulated.get(4 * k + 1) / n;
+                    s.b = accumulated.get(4 * k + 2) / n;
+                }
+                if(added != null)
+                {
+                    s.r += added.get(3 * k);
+                    s.g += added.get(3 * k + 1);
+                    s.b += added.get(3 * k + 2);
+                }
+                image[i][j] = s;
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return height;
+    }
+
+    @Override
+    public void add(Film film)
+    {
+        assert film.getHeight() == this.getHeight() && film.getWidth() == this.getWidth();
+
+        AtomicFloatArray added = addedImages();
+        Spectrum[][] im = film.getImage();
+
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int k = 3 * (j * width + i);
+                added.add(k, im[i][j].r);
+                added.add(k + 1, im[i][j].g);
+                added.add(k + 2, im[i][j].b);
+            }
+        }
+    }
+
+    private synchronized AtomicFloatArray addedImages()
+    {
+        if(added == null)
+        {
+            added = new AtomicFloatArray(3 * width * height);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,110 @@
+package rt.films;
+
+import rt.Spectrum;
+
+/**
+ * Accumulates filtered samples for a rectangular region of a {@link FilteredFilm}. A tile
+ * is used by a single thread, so adding samples does not need any synchronization.
+ * <p>
+ * Like {@link BoxFilterFilm}, the weighted sums of the samples and the sums of the weights
+ * are stored in one flat float array per channel, row by row.
+ */
+public class FilmTile
+{
+    final int left, right, bottom, top;
+    final float[] red, green, blue, weight;
+
+    private final float[] table;
+    private final float radius;
+    private final float tableScale;
+
+    /**
+     * The filter weights in x of the current sample, so that they are looked up only once per column.
+     */
+    private final float[] weightsX;
+
+    /**
+     * @param table the filter evaluated at equally spaced distances in [0, radius)
+     */
+    FilmTile(int left, int right, int bottom, int top, float[] table, float radius)
+    {
+        this.left = left;
+        this.right = right;
+        this.bottom = bottom;
+        this.top = top;
+        this.table = table;
+        this.radius = radius;
+        this.tableScale = table.length / radius;
+
+        int n = (right - left) * (top - bottom);
+        red = new float[n];
+        green = new float[n];
+        blue = new float[n];
+        weight = new float[n];
+        weightsX = new float[(int) Math.ceil(2 * radius) + 1];
+    }
+
+    /**
+     * Adds a sample at the image space position ({@param x}, {@param y}) to all pixels of the tile
+     * whose centers are within the filter radius.
+     */
+    public void addSample(double x, double y, Spectrum s)
+    {
+        // Position relative to the pixel centers, which are at (i + 0.5, j + 0.5)
+        float px = (float) x - 0.5f;
+        float py = (float) y - 0.5f;
+
+        int minX = Math.max(left, (int) Math.ceil(px - radius));
+        int maxX = Math.min(right - 1, (int) Math.floor(px + radius));
+        int minY = Math.max(bottom, (int) Math.ceil(py - radius));
+        int maxY = Math.min(top - 1, (int) Math.floor(py + radius));
+
+        for(int i = minX; i <= maxX; i++)
+        {
+            weightsX[i - minX] = lookup(i - px);
+        }
+
+        int width = right - left;
+        for(int j = minY; j <= maxY; j++)
+        {
+            float weightY = lookup(j - py);
+            int row = (j - bottom) * width - left;
+            for(int i = minX; i <= maxX; i++)
+            {
+                float w = weightsX[i - minX] * weightY;
+                int idx = row + i;
+                red[idx] += w * s.r;
+                green[idx] += w * s.g;
+                blue[idx] += w * s.b;
+                weight[idx] += w;
+            }
+        }
+    }
+
+    /**
+     * Adds the sums of another {@param tile} that lies within this tile.
+     */
+    void add(FilmTile tile)
+    {
+        int width = right - left;
+        int tileWidth = tile.right - tile.left;
+        for(int j = tile.bottom; j < tile.top; j++)
+        {
+            int row = (j - bottom) * width + tile.left - left;
+            int tileRow = (j - tile.bottom) * tileWidth;
+            for(int i = 0; i < tileWidth; i++)
+            {
+                red[row + i] += tile.red[tileRow + i];
+                green[row + i] += tile.green[tileRow + i];
+                blue[row + i] += tile.blue[tileRow + i];
+                weight[row + i] += tile.weight[tileRow + i];
+            }
+        }
+    }
+
+    private float lookup(float distance)
+    {
+        int k = (int) (Math.abs(distance) * tableScale);
+        return k < table.length ? table[k] : 0;
+    }
+}
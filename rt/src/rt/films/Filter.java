@@ -0,0 +1,19 @@
+package rt.films;
+
+/**
+ * A separable reconstruction filter for a {@link FilteredFilm}. The weight of a sample
+ * for a pixel is the product of the filter evaluated at the x and the y distance
+ * between the sample and the center of the pixel.
+ */
+public interface Filter
+{
+    /**
+     * Samples only contribute to pixels whose centers lie closer than the radius in x and y.
+     */
+    public float getRadius();
+
+    /**
+     * Evaluates the filter at distance {@param x} from its center, where {@code |x| <= getRadius()}.
+     */
+    public float evaluate(float x);
+}
@@ -0,0 +1,139 @@
+package rt.films;
+
+import rt.Film;
+import rt.Spectrum;
+
+/**
+ * Accumulates samples with a reconstruction {@link Filter}. A sample contributes to all pixels
+ * whose centers lie within the radius of the filter, weighted by the filter, and the value of a
+ * pixel is the weighted average of these contributions.
+ * <p>
+ * The filter is evaluated once when the film is made and stored in a table. Render threads
+ * should accumulate their samples in tiles obtained from {@link #makeTile(int, int, int, int)},
+ * because samples near the border of a region also contribute to pixels of the neighboring
+ * regions. Adding samples to the film directly is synchronized.
+ */
+public class FilteredFilm implements TiledFilm
+{
+    /**
+     * Number of entries of the filter table.
+     */
+    private static final int TABLE_SIZE = 64;
+
+    private final int width, height;
+    private final float[] table;
+    private final float radius;
+
+    /**
+     * Accumulates the samples of the whole film.
+     */
+    private final FilmTile accumulated;
+
+    /**
+     * Sums of the normalized images added with {@link #add(Film)}. Allocated on first use.
+     */
+    private float[] added;
+
+    public FilteredFilm(int width, int height, Filter filter)
+    {
+        this.width = width;
+        this.height = height;
+        this.radius = filter.getRadius();
+
+        table = new float[TABLE_SIZE];
+        for(int k = 0; k < TABLE_SIZE; k++)
+        {
+            table[k] = filter.evaluate((k + 0.5f) * radius / TABLE_SIZE);
+        }
+        accumulated = new FilmTile(0, width, 0, height, table, radius);
+    }
+
+    @Override
+    public synchronized void addSample(double x, double y, Spectrum s)
+    {
+        accumulated.addSample(x, y, s);
+    }
+
+    @Override
+    public FilmTile makeTile(int left, int right, int bottom, int top)
+    {
+        int border = (int) Math.ceil(radius);
+        return new FilmTile(Math.max(0, left - border), Math.min(width, right + border),
+                Math.max(0, bottom - border), Math.min(height, top + border), table, radius);
+    }
+
+    @Override
+    public synchronized void mergeTile(FilmTile tile)
+    {
+        accumulated.add(tile);
+    }
+
+    /**
+     * Computes the weighted average of the samples in each pixel. The returned
+     * image is a copy, so it may be modified freely.
+     */
+    @Override
+    public synchronized Spectrum[][] getImage()
+    {
+        Spectrum[][] image = new Spectrum[width][height];
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int idx = j * width + i;
+                Spectrum s = new Spectrum();
+                if(accumulated.weight[idx] != 0)
+                {
+                    float w = 1f / accumulated.weight[idx];
+                    s.r = accumulated.red[idx] * w;
+                    s.g = accumulated.green[idx] * w;
+                    s.b = accumulated.blue[idx] * w;
+                }
+                if(added != null)
+                {
+                    s.r += added[3 * idx];
+                    s.g += added[3 * idx + 1];
+                    s.b += added[3 * idx + 2];
+                }
+                image[i][j] = s;
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return height;
+    }
+
+    @Override
+    public synchronized void add(Film film)
+    {
+        assert film.getHeight() == this.getHeight() && film.getWidth() == this.getWidth();
+
+        if(added == null)
+        {
+            added = new float[3 * width * height];
+        }
+
+        Spectrum[][] im = film.getImage();
+
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int idx = 3 * (j * width + i);
+                added[idx] += im[i][j].r;
+                added[idx + 1] += im[i][j].g;
+                added[idx + 2] += im[i][j].b;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package rt.films;
+
+/**
+ * A Gaussian filter {@code exp(-alpha * x^2)}. The value of the Gaussian at the radius is
+ * subtracted, so that the filter goes to zero at the radius instead of being cut off.
+ */
+public class GaussianFilter implements Filter
+{
+    private final float radius;
+    private final float alpha;
+    private final float offset;
+
+    public GaussianFilter(float radius, float alpha)
+    {
+        this.radius = radius;
+        this.alpha = alpha;
+        this.offset = (float) Math.exp(-alpha * radius * radius);
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    @Override
+    public float evaluate(float x)
+    {
+        return Math.max(0, (float) Math.exp(-alpha * x * x) - offset);
+    }
+}
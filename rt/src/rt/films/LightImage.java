@@ -3,50 +3,79 @@ package rt.films;
 import rt.Film;
 import rt.Spectrum;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * A light-image used for bidirectional path tracing.
+ * <p>
+ * Light paths of all render threads are splatted into arbitrary pixels of the same light-image,
+ * so the splats are accumulated atomically into primitive arrays, and the total number of
+ * splats is counted by a {@link StripedCounter}. No splat is lost and no lock is taken. The
+ * normalized image is only computed in {@link #getImage()}.
+ * <p>
+ * When rendering deterministically, the sums are kept in fixed point with {@link #FRACTION_BITS}
+ * bits after the binary point instead. Unlike floating point additions, integer additions give
+ * the same sum in any order, so the light-image does not depend on how the splats of the threads
+ * interleave. Fixed point supports splats in [-{@link #MAX_SPLAT}, MAX_SPLAT], larger splats are
+ * clamped to this range and NaNs are dropped. The sum of a pixel must stay below 2^39, which
+ * holds for up to 2^23 splats of the largest value.
  */
 public class LightImage implements Film
 {
+    /**
+     * Splats are rounded to multiples of 2^-24, which leaves room for sums up to 2^39 per pixel.
+     */
+    public static final int FRACTION_BITS = 24;
+
+    /**
+     * The largest magnitude of a splat in fixed point.
+     */
+    public static final float MAX_SPLAT = 1 << 16;
+
+    private static final double TO_FIXED = 1L << FRACTION_BITS;
+    private static final float FROM_FIXED = 1.f / (1L << FRACTION_BITS);
+
     private int width, height;
-    private Spectrum[][] image;
-    private Spectrum[][] unnormalized;
-    private int numSamples;
+
+    /**
+     * The r, g and b sums of the splats into each pixel, row by row. Only one of them is used,
+     * the fixed point sums if the light-image is deterministic.
+     */
+    private final AtomicFloatArray unnormalized;
+    private final AtomicLongArray unnormalizedFixed;
+    private final StripedCounter numSamples;
+
+    /**
+     * The images added with {@link #add(Film)}, as r, g and b of each pixel.
+     */
+    private final AtomicFloatArray added;
+    private volatile float scale;
 
     public LightImage(int width, int height)
     {
-        this.width = width;
-        this.height = height;
-        init();
+        this(width, height, false);
     }
 
-    private void init()
+    /**
+     * @param deterministic if true, the splats are summed in fixed point, see {@link rt.Main#deterministic}
+     */
+    public LightImage(int width, int height, boolean deterministic)
     {
-        unnormalized = new Spectrum[width][height];
-        image = new Spectrum[width][height];
-        for(int i = 0; i < width; i++)
-        {
-            for(int j = 0; j < height; j++)
-            {
-                unnormalized[i][j] = new Spectrum();
-                image[i][j] = new Spectrum();
-            }
-        }
-        numSamples = 0;
+        this.width = width;
+        this.height = height;
+        unnormalized = deterministic ? null : new AtomicFloatArray(3 * width * height);
+        unnormalizedFixed = deterministic ? new AtomicLongArray(3 * width * height) : null;
+        added = new AtomicFloatArray(3 * width * height);
+        numSamples = new StripedCounter();
+        scale = 1;
     }
 
     /**
      *  Scale all values of this film by {@param scale}.
      */
-    public void scale(float scale)
+    public synchronized void scale(float scale)
     {
-        for(int i = 0; i < width; i++)
-        {
-            for(int j = 0; j < height; j++)
-            {
-                image[i][j].mult(scale);
-            }
-        }
+        this.scale *= scale;
     }
 
     @Override
@@ -54,20 +83,64 @@ public class LightImage implements Film
     {
         int _x = (int) x;
         int _y = (int) y;
-        numSamples++;
+        numSamples.increment();
         if(_x >= 0 && _x < width && _y >= 0 && _y < height)
         {
-            unnormalized[_x][_y].add(s);
-
-            image[_x][_y] = new Spectrum(unnormalized[_x][_y]);
-            image[_x][_y].mult(width * height);
-            image[_x][_y].mult(1f / numSamples);
+            int i = 3 * (_y * width + _x);
+            if(unnormalizedFixed != null)
+            {
+                unnormalizedFixed.getAndAdd(i, toFixed(s.r));
+                unnormalizedFixed.getAndAdd(i + 1, toFixed(s.g));
+                unnormalizedFixed.getAndAdd(i + 2, toFixed(s.b));
+            }
+            else
+            {
+                unnormalized.add(i, s.r);
+                unnormalized.add(i + 1, s.g);
+                unnormalized.add(i + 2, s.b);
+            }
         }
     }
 
+    /**
+     * Converts a splat to fixed point. Infinite and too large splats are clamped to
+     * {@link #MAX_SPLAT}, so that a single splat cannot overflow the sum of the pixel.
+     */
+    private static long toFixed(float value)
+    {
+        if(Float.isNaN(value))
+            return 0;
+        return Math.round(Math.max(-MAX_SPLAT, Math.min(value, MAX_SPLAT)) * TO_FIXED);
+    }
+
+    private float getUnnormalized(int k)
+    {
+        return unnormalizedFixed != null ? unnormalizedFixed.get(k) * FROM_FIXED : unnormalized.get(k);
+    }
+
+    /**
+     * Computes the image from the splats so far. Every splat is weighted by the number of pixels
+     * over the total number of splats.
+     */
     @Override
     public Spectrum[][] getImage()
     {
+        long n = numSamples.sum();
+        float weight = n > 0 ? width * height / (float) n : 0;
+        float scale = this.scale;
+
+        Spectrum[][] image = new Spectrum[width][height];
+        for(int j = 0; j < height; j++)
+        {
+            for(int i = 0; i < width; i++)
+            {
+                int k = 3 * (j * width + i);
+                image[i][j] = new Spectrum(
+                        (getUnnormalized(k) * weight + added.get(k)) * scale,
+                        (getUnnormalized(k + 1) * weight + added.get(k + 1)) * scale,
+                        (getUnnormalized(k + 2) * weight + added.get(k + 2)) * scale);
+            }
+        }
         return image;
     }
 
@@ -90,11 +163,14 @@ public class LightImage implements Film
 
         Spectrum[][] im = film.getImage();
 
-        for(int i = 0; i < getWidth(); i++)
+        for(int j = 0; j < height; j++)
         {
-            for(int j = 0; j < getHeight(); j++)
+            for(int i = 0; i < width; i++)
             {
-                image[i][j].add(im[i][j]);
+                int k = 3 * (j * width + i);
+                added.add(k, im[i][j].r);
+                added.add(k + 1, im[i][j].g);
+                added.add(k + 2, im[i][j].b);
             }
         }
     }
@@ -0,0 +1,50 @@
+package rt.films;
+
+/**
+ * The cubic filter of Mitchell and Netravali with the parameters {@code B} and {@code C}.
+ * It has slightly negative lobes, which sharpen the image. Mitchell and Netravali
+ * recommend {@code B = C = 1/3}.
+ */
+public class MitchellNetravaliFilter implements Filter
+{
+    private final float radius;
+    private final float b, c;
+
+    public MitchellNetravaliFilter(float radius)
+    {
+        this(radius, 1 / 3.f, 1 / 3.f);
+    }
+
+    public MitchellNetravaliFilter(float radius, float b, float c)
+    {
+        this.radius = radius;
+        this.b = b;
+        this.c = c;
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * The filter is defined on [-2, 2], so {@param x} is scaled from [-radius, radius] to that range.
+     */
+    @Override
+    public float evaluate(float x)
+    {
+        x = Math.abs(2 * x / radius);
+        if(x > 2)
+        {
+            return 0;
+        }
+        if(x > 1)
+        {
+            return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x
+                    + (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6;
+        }
+        return ((12 - 9 * b - 6 * c) * x * x * x + (-18 + 12 * b + 6 * c) * x * x
+                + (6 - 2 * b)) / 6;
+    }
+}
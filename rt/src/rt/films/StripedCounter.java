@@ -0,0 +1,43 @@
+package rt.films;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is incremented by many threads at a high rate. Every thread increments one of
+ * several stripes, chosen by its id, and the stripes are only summed up when the count is read.
+ * The stripes are padded to separate cache lines, so threads on different stripes do not compete
+ * for the same cache line.
+ */
+final class StripedCounter
+{
+    /**
+     * Distance between two stripes in longs, i.e. 64 bytes.
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray stripes;
+    private final int mask;
+
+    StripedCounter()
+    {
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        stripes = new AtomicLongArray(n * PADDING);
+        mask = n - 1;
+    }
+
+    void increment()
+    {
+        int stripe = (int) Thread.currentThread().getId() & mask;
+        stripes.incrementAndGet(stripe * PADDING);
+    }
+
+    long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i += PADDING)
+        {
+            sum += stripes.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,22 @@
+package rt.films;
+
+import rt.Film;
+
+/**
+ * A film whose samples contribute to several pixels. To avoid contention between render
+ * threads working on neighboring image regions, each thread accumulates its samples in a
+ * private {@link FilmTile} and merges the tile into the film once it is done.
+ */
+public interface TiledFilm extends Film
+{
+    /**
+     * Makes a tile for the samples of the pixels [left, right) x [bottom, top). The tile
+     * also covers the neighboring pixels that these samples contribute to.
+     */
+    public FilmTile makeTile(int left, int right, int bottom, int top);
+
+    /**
+     * Adds the samples accumulated in {@param tile} to the film. May be called concurrently.
+     */
+    public void mergeTile(FilmTile tile);
+}
@@ -0,0 +1,26 @@
+package rt.films;
+
+/**
+ * A filter whose weight decreases linearly from the center to zero at the radius.
+ */
+public class TriangleFilter implements Filter
+{
+    private final float radius;
+
+    public TriangleFilter(float radius)
+    {
+        this.radius = radius;
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    @Override
+    public float evaluate(float x)
+    {
+        return Math.max(0, radius - Math.abs(x));
+    }
+}
@@ -0,0 +1,81 @@
+package rt.films;
+
+import rt.Spectrum;
+
+/**
+ * A {@link BoxFilterFilm} that additionally estimates the variance of the samples 
+ * of each pixel, which is used for adaptive sampling. The estimate is based on the 
+ * luminance of the samples, and their sum and sum of squares are stored in two more 
+ * flat float arrays. The number of samples is the one counted by the BoxFilterFilm.
+ */
+public class VarianceFilm extends BoxFilterFilm {
+
+	private float[] luminance, luminanceSquared;
+
+	public VarianceFilm(int width, int height)
+	{
+		super(width, height);
+		luminance = new float[width*height];
+		luminanceSquared = new float[width*height];
+	}
+
+	@Override
+	public void addSample(double x, double y, Spectrum s)
+	{
+		super.addSample(x, y, s);
+		if((int)x>=0 && (int)x<width && (int)y>=0 && (int)y<height)
+		{
+			int idx = (int)y*width + (int)x;
+			float l = s.luminance();
+			luminance[idx] += l;
+			luminanceSquared[idx] += l*l;
+		}
+	}
+
+	/**
+	 * Returns the number of samples of pixel (@param x, @param y).
+	 */
+	public float getSampleCount(int x, int y)
+	{
+		return getSampleCount(y*width + x);
+	}
+
+	/**
+	 * Returns the mean luminance of the samples of pixel (@param x, @param y).
+	 */
+	public float getMean(int x, int y)
+	{
+		int idx = y*width + x;
+		float n = getSampleCount(idx);
+		return n > 0 ? luminance[idx] / n : 0;
+	}
+
+	/**
+	 * Returns the unbiased sample variance of the luminance of the samples of 
+	 * pixel (@param x, @param y), or infinity if there are less than two samples.
+	 */
+	public float getVariance(int x, int y)
+	{
+		int idx = y*width + x;
+		float n = getSampleCount(idx);
+		if(n < 2)
+			return Float.POSITIVE_INFINITY;
+
+		float mean = luminance[idx] / n;
+		return Math.max(0, (luminanceSquared[idx] - n*mean*mean) / (n - 1));
+	}
+
+	/**
+	 * Returns the relative standard error of the mean luminance of pixel 
+	 * (@param x, @param y), that is, the expected deviation of the pixel from 
+	 * its converged value in relation to its brightness. Dark pixels are treated 
+	 * as if they had a luminance of at least @param minLuminance, so that noise 
+	 * that is invisible in the image does not count as a large error.
+	 */
+	public float getRelativeError(int x, int y, float minLuminance)
+	{
+		float n = getSampleCount(x, y);
+		float standardError = (float) Math.sqrt(getVariance(x, y) / n);
+		return standardError / Math.max(getMean(x, y), minLuminance);
+	}
+}
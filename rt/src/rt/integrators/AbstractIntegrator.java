@@ -16,16 +16,36 @@ public abstract class AbstractIntegrator implements Integrator
 
     float epsilon;
 
+    /**
+     * Makes the random numbers along the paths. This is the sampler of the latest call to
+     * {@link #makePixelSamples(Sampler, int)}, so that the paths continue the samples of the pixel.
+     * Every render thread has its own integrator and sampler, so the sampler is never shared
+     * between threads and does not need to be synchronized.
+     */
+    Sampler random;
+
+    /**
+     * Receives the two-dimensional samples drawn from {@link #random}, so that drawing them does not allocate.
+     */
+    final float[] sample = new float[2];
+
+    /**
+     * Reused for all shadow rays of the thread.
+     */
+    private final Ray shadowRay = new Ray(new Point3f(), new Vector3f());
+
     public AbstractIntegrator(Scene scene)
     {
         this.lightList = scene.getLightList();
         this.root = scene.getIntersectable();
         this.epsilon = scene.getEpsilon();
+        this.random = new RandomSampler();
     }
 
     @Override
     public float[][] makePixelSamples(Sampler sampler, int n)
     {
+        random = sampler;
         return sampler.makeSamples(n, 2);
     }
 
@@ -36,39 +56,35 @@ public abstract class AbstractIntegrator implements Integrator
      */
     protected boolean isInShadow(HitRecord hit, Vector3f lightDir)
     {
-        Ray shadowRay = new Ray(hit.position, lightDir);
-        epsilonTranslation(shadowRay, lightDir);
+        // Hits behind the light source do not count
+        shadowRay.set(hit.position, lightDir, 0, 1);
+        epsilonOffset(shadowRay);
 
-        HitRecord shadowRayHit = root.intersect(shadowRay);
-
-        if (shadowRayHit == null) {
-            // No object hit
-            return false;
-        }
-
-        if (shadowRayHit.t > 1 - epsilon) {
-            // Hit is behind the light source
-            return false;
-        }
-
-        if (!shadowRayHit.material.castsShadows()) {
-            return false;
-        }
+        return root.isOccluded(shadowRay);
+    }
 
-        return true;
+    /**
+     * Ignores intersections closer than epsilon to the origin of the {@param ray}, to avoid
+     * self-intersections of rays leaving a surface.
+     */
+    protected void epsilonOffset(Ray ray)
+    {
+        ray.tmin = epsilon;
     }
 
-    protected void epsilonTranslation(Ray ray, Vector3f direction)
+    /**
+     * Draws a two-dimensional sample from {@link #random}. The returned array is overwritten
+     * by the next call, so it must be consumed right away.
+     */
+    protected float[] next2D()
     {
-        Vector3f d = new Vector3f(direction);
-        d.scale(epsilon);
-        ray.translate(d);
+        random.next2D(sample);
+        return sample;
     }
 
     protected LightGeometry getRandomLight()
     {
-        float[][] rnd = (new RandomSampler()).makeSamples(1, 1);
-        int index = (int) Math.floor(rnd[0][0] * lightList.size());
+        int index = (int) Math.floor(random.nextFloat() * lightList.size());
         return lightList.get(index);
     }
 }
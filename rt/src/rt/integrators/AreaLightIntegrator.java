@@ -5,7 +5,6 @@ import rt.importanceSampling.Heuristic;
 import rt.importanceSampling.ImportanceSample;
 import rt.importanceSampling.PowerHeuristic;
 import rt.importanceSampling.SamplingTechnique;
-import rt.samplers.RandomSampler;
 
 import javax.sound.sampled.FloatControl;
 import javax.vecmath.Vector3f;
@@ -17,6 +16,7 @@ public class AreaLightIntegrator extends WhittedIntegrator
 {
 
     Sampler sampler;
+    final float[] sample = new float[2];
     SamplingTechnique samplingTechnique;
     Heuristic heuristic;
 
@@ -26,6 +26,16 @@ public class AreaLightIntegrator extends WhittedIntegrator
         this.sampler = scene.getSamplerFactory().make();
     }
 
+    /**
+     * Draws the samples of the paths from the same sampler as the pixel samples.
+     */
+    @Override
+    public float[][] makePixelSamples(Sampler sampler, int n)
+    {
+        this.sampler = sampler;
+        return sampler.makeSamples(n, 2);
+    }
+
     @Override
     protected void integrateHemisphere(HitRecord surfaceHit, Spectrum outgoing, int depth)
     {
@@ -76,7 +86,7 @@ public class AreaLightIntegrator extends WhittedIntegrator
 
     protected ImportanceSample sampleBRDF(HitRecord surfaceHit)
     {
-        Material.ShadingSample shadingSample = surfaceHit.material.getShadingSample(surfaceHit, sampler.makeSamples(1, 2)[0]);
+        Material.ShadingSample shadingSample = surfaceHit.material.getShadingSample(surfaceHit, next2D());
 
         if(shadingSample.p == 0)
         {
@@ -86,7 +96,7 @@ public class AreaLightIntegrator extends WhittedIntegrator
         Vector3f direction = shadingSample.w;
         Ray sampleRay = new Ray(surfaceHit.position, direction);
 
-        epsilonTranslation(sampleRay, sampleRay.direction);
+        epsilonOffset(sampleRay);
 
         HitRecord lightHit = root.intersect(sampleRay);
         if(lightHit == null)
@@ -126,7 +136,7 @@ public class AreaLightIntegrator extends WhittedIntegrator
     {
         // Randomly select a light source
         LightGeometry lightSource = getRandomLight();
-        HitRecord lightHit = lightSource.sample(sampler.makeSamples(1, 2)[0]);
+        HitRecord lightHit = lightSource.sample(next2D());
         lightHit.p /= lightList.size();
 
         Vector3f lightDir = StaticVecmath.sub(lightHit.position, surfaceHit.position);
@@ -174,8 +184,17 @@ public class AreaLightIntegrator extends WhittedIntegrator
 
     private LightGeometry getRandomLight()
     {
-        float[][] rnd = (new RandomSampler()).makeSamples(1, 1);
-        int index = (int) Math.floor(rnd[0][0] * lightList.size());
+        int index = (int) Math.floor(sampler.nextFloat() * lightList.size());
         return lightList.get(index);
     }
+
+    /**
+     * Draws a two-dimensional sample without allocating. The returned array is overwritten
+     * by the next call, so it must be consumed right away.
+     */
+    private float[] next2D()
+    {
+        sampler.next2D(sample);
+        return sample;
+    }
 }
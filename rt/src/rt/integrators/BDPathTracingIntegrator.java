@@ -1,7 +1,6 @@
 package rt.integrators;
 
 import rt.*;
-import rt.samplers.RandomSampler;
 
 import javax.vecmath.Point2f;
 import javax.vecmath.Point3f;
@@ -150,7 +149,7 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
             // Make the current vertex
             PathVertex current = new PathVertex();
             current.hitRecord = surfaceHit;
-            current.shadingSample = surfaceHit.material.getShadingSample(surfaceHit, (new RandomSampler().makeSamples(1, 2)[0]));
+            current.shadingSample = surfaceHit.material.getShadingSample(surfaceHit, next2D());
             current.index = path.numberOfVertices();
             current.alpha = new Spectrum(alpha);
 
@@ -183,7 +182,7 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
 
             // Prepare the intersection for the next vertex
             nextRay = new Ray(surfaceHit.position, current.shadingSample.w);
-            epsilonTranslation(nextRay, nextRay.direction);
+            epsilonOffset(nextRay);
         }
 
         assert path.numberOfVertices() <= maxEyeVertices;
@@ -208,7 +207,7 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
             Point3f currentPos = new Point3f(current.hitRecord.position);
             Vector3f currentDir = new Vector3f(current.shadingSample.w);
             Ray nextRay = new Ray(currentPos, currentDir);
-            epsilonTranslation(nextRay, currentDir);
+            epsilonOffset(nextRay);
             HitRecord hit = root.intersect(nextRay);
 
             if(hit == null) break;
@@ -223,7 +222,7 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
             // Create the new vertex
             current = new PathVertex();
             current.hitRecord = hit;
-            current.shadingSample = hit.material.getShadingSample(hit, (new RandomSampler()).makeSamples(1, 2)[0]);
+            current.shadingSample = hit.material.getShadingSample(hit, next2D());
             current.index = path.numberOfVertices();
             current.alpha = new Spectrum(alpha);
 
@@ -260,8 +259,7 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
         if(length >= maxLength) return true;
         if(length < minLength) return false;
 
-        RandomSampler sampler = new RandomSampler();
-        float p =  sampler.makeSamples(1, 1)[0][0];
+        float p = random.nextFloat();
 
         // Terminate with given probability above a certain path length
         return p < terminationProbability;
@@ -301,13 +299,12 @@ public class BDPathTracingIntegrator extends AbstractIntegrator
     {
         // Sample the light source
         LightGeometry lightSource = getRandomLight();
-        RandomSampler sampler = new RandomSampler();
-        HitRecord lightHit = lightSource.sample(sampler.makeSamples(1, 2)[0]);
+        HitRecord lightHit = lightSource.sample(next2D());
         lightHit.p /= lightList.size();
 
         PathVertex vertex = new PathVertex();
         vertex.hitRecord = lightHit;
-        vertex.shadingSample = lightHit.material.getEmissionSample(lightHit, sampler.makeSamples(1, 2)[0]);
+        vertex.shadingSample = lightHit.material.getEmissionSample(lightHit, next2D());
         vertex.index = 0;
         vertex.alpha = new Spectrum(1, 1, 1);
         vertex.alpha.mult(1 / lightHit.p);
@@ -71,7 +71,7 @@ public class BDPathTracingIntegratorFactory implements IntegratorFactory
     @Override
     public void prepareScene(Scene scene)
     {
-        lightImage = new LightImage(scene.getFilm().getWidth(), scene.getFilm().getHeight());
+        lightImage = new LightImage(scene.getFilm().getWidth(), scene.getFilm().getHeight(), Main.deterministic);
     }
 
     public void writeLightImage(String s)
@@ -90,4 +90,16 @@ public class BDPathTracingIntegratorFactory implements IntegratorFactory
     {
         film.add(lightImage);
     }
+
+    /**
+     * Returns a new film with the image of {@param film} plus the light image so far, without modifying
+     * {@param film}, for snapshots taken before {@link #addLightImage(Film)}.
+     */
+    public Film withLightImage(Film film)
+    {
+        Film sum = new BoxFilterFilm(film.getWidth(), film.getHeight());
+        sum.add(film);
+        sum.add(lightImage);
+        return sum;
+    }
 }
@@ -1,14 +1,14 @@
 package rt.integrators;
 
 import rt.*;
-import rt.samplers.RandomSampler;
 
+import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
 
 /**
  * Created by Adrian on 23.04.2016.
  */
-public class PathTracingIntegrator extends AbstractIntegrator
+public class PathTracingIntegrator extends AbstractIntegrator implements PacketIntegrator
 {
     public static final int DEFAULT_MAX_DEPTH = 5;
     public static final int DEFAULT_MIN_DEPTH = 2;
@@ -20,6 +20,16 @@ public class PathTracingIntegrator extends AbstractIntegrator
     float terminationProbability;
     float shadowRayContributionThreshold;
 
+    /*
+     * Scratch objects reused for all paths, so that the integrator itself does not allocate
+     * along the paths. Every render thread has its own integrator.
+     */
+    private final Spectrum alpha = new Spectrum();
+    private final Spectrum contribution = new Spectrum();
+    private final Vector3f lightDir = new Vector3f();
+    private final Vector3f wIn = new Vector3f();
+    private final Ray nextRay = new Ray(new Point3f(), new Vector3f());
+
     public PathTracingIntegrator(Scene scene)
     {
         super(scene);
@@ -31,14 +41,18 @@ public class PathTracingIntegrator extends AbstractIntegrator
 
     @Override
     public Spectrum integrate(Ray r)
+    {
+        return integrate(r, root.intersect(r));
+    }
+
+    @Override
+    public Spectrum integrate(Ray r, HitRecord surfaceHit)
     {
         Spectrum color = new Spectrum();
-        Spectrum alpha = new Spectrum(1, 1, 1);
+        alpha.set(1, 1, 1);
         int k = 0;
         boolean previousMaterialWasSpecular = false;
 
-        HitRecord surfaceHit = root.intersect(r);
-
         while(true)
         {
             if(surfaceHit == null) break;
@@ -50,13 +64,12 @@ public class PathTracingIntegrator extends AbstractIntegrator
                 break;
             }
 
-            Material.ShadingSample shadingSample = surfaceHit.material.getShadingSample(surfaceHit, (new RandomSampler().makeSamples(1, 2)[0]));
+            Material.ShadingSample shadingSample = surfaceHit.material.getShadingSample(surfaceHit, next2D());
 
             if(!shadingSample.isSpecular)
             {   // Do not add light source contribution on specular surfaces (mirrors, refractive materials)
-                Spectrum lightSourceContribution = lightSourceContribution(surfaceHit);
-                lightSourceContribution.mult(alpha);
-                color.add(lightSourceContribution);
+                lightSourceContribution(surfaceHit, contribution);
+                color.addProduct(contribution, alpha);
             }
 
             if(terminatePath(k)) break;
@@ -67,8 +80,8 @@ public class PathTracingIntegrator extends AbstractIntegrator
             alpha.mult(1 / (shadingSample.p * (1 - q)));
 
             // Go to next path segment
-            Ray nextRay = new Ray(surfaceHit.position, shadingSample.w);
-            epsilonTranslation(nextRay, nextRay.direction);
+            nextRay.set(surfaceHit.position, shadingSample.w, 0, Float.POSITIVE_INFINITY);
+            epsilonOffset(nextRay);
             surfaceHit = root.intersect(nextRay);
             k++;
             previousMaterialWasSpecular = shadingSample.isSpecular;
@@ -77,11 +90,14 @@ public class PathTracingIntegrator extends AbstractIntegrator
         return color;
     }
 
-    protected Spectrum lightSourceContribution(HitRecord surfaceHit)
+    /**
+     * Stores the radiance arriving at the surface point from a randomly sampled point on
+     * a light source in {@param contribution}.
+     */
+    protected void lightSourceContribution(HitRecord surfaceHit, Spectrum contribution)
     {
         LightGeometry light = getRandomLight();
-        RandomSampler sampler = new RandomSampler();
-        HitRecord lightHit = light.sample(sampler.makeSamples(1, 2)[0]);
+        HitRecord lightHit = light.sample(next2D());
         lightHit.p /= lightList.size();
 
         // Point lights have undefined normal
@@ -99,35 +115,40 @@ public class PathTracingIntegrator extends AbstractIntegrator
         float conversionFactor = cos / d2;
 
         // Russian Roulette on shadow ray
-        Spectrum test = lightHit.material.evaluateEmission(lightHit, lightHit.w);
-        test.mult(conversionFactor);
-        float length = (float) Math.sqrt(test.r * test.r + test.g * test.g + test.b * test.b);
+        Spectrum emission = lightHit.material.evaluateEmission(lightHit, lightHit.w);
+        float r = emission.r * conversionFactor;
+        float g = emission.g * conversionFactor;
+        float b = emission.b * conversionFactor;
+        float length = (float) Math.sqrt(r * r + g * g + b * b);
         // Do not trace the shadow ray if contribution is too low
         if(length < shadowRayContributionThreshold)
-            return new Spectrum(0, 0, 0);
+        {
+            contribution.set(0, 0, 0);
+            return;
+        }
 
-        Spectrum contribution = new Spectrum(1, 1, 1);
-        contribution.mult(shade(surfaceHit, lightHit));
+        shade(surfaceHit, lightHit, emission, contribution);
         if(!isPointLight) contribution.mult(1 / lightHit.p);
         contribution.mult(conversionFactor);
-
-        return contribution;
     }
 
-    protected Spectrum shade(HitRecord surfaceHit, HitRecord lightHit)
+    /**
+     * Stores the {@param emission} of the light source reflected at the surface point in
+     * {@param shaded}, or zero if the light source is occluded.
+     */
+    protected void shade(HitRecord surfaceHit, HitRecord lightHit, Spectrum emission, Spectrum shaded)
     {
-        Vector3f lightDir = StaticVecmath.sub(lightHit.position, surfaceHit.position);
+        lightDir.sub(lightHit.position, surfaceHit.position);
 
         if(isInShadow(surfaceHit, lightDir))
         {   // Point on surface is in shadow of light source
-            return new Spectrum();
+            shaded.set(0, 0, 0);
+            return;
         }
 
-        Spectrum s = lightHit.material.evaluateEmission(lightHit, lightHit.w);
-        Vector3f wIn = StaticVecmath.negate(lightHit.w);
-        s.mult(surfaceHit.material.evaluateBRDF(surfaceHit, surfaceHit.w, wIn));
-        s.mult(Math.max(0, surfaceHit.normal.dot(wIn)));
-        return s;
+        wIn.negate(lightHit.w);
+        shaded.mult(emission, surfaceHit.material.evaluateBRDF(surfaceHit, surfaceHit.w, wIn));
+        shaded.mult(Math.max(0, surfaceHit.normal.dot(wIn)));
     }
 
     protected boolean terminatePath(int depth)
@@ -135,8 +156,7 @@ public class PathTracingIntegrator extends AbstractIntegrator
         if(depth >= maxDepth) return true;
         if(depth <= minDepth) return false;
 
-        RandomSampler sampler = new RandomSampler();
-        float p =  sampler.makeSamples(1, 1)[0][0];
+        float p = random.nextFloat();
 
         // Terminate with given probability above a certain path length
         return p < terminationProbability;
@@ -5,7 +5,7 @@ import java.util.Iterator;
 import javax.vecmath.*;
 
 import rt.HitRecord;
-import rt.Integrator;
+import rt.PacketIntegrator;
 import rt.Intersectable;
 import rt.LightList;
 import rt.LightGeometry;
@@ -18,7 +18,7 @@ import rt.StaticVecmath;
 /**
  * Integrator for Whitted style ray tracing.
  */
-public class PointLightIntegrator implements Integrator {
+public class PointLightIntegrator implements PacketIntegrator {
 
 	public static float EPSILON = 0.0001f;
 
@@ -37,8 +37,11 @@ public class PointLightIntegrator implements Integrator {
 	 * area light sources, etc. supported.
 	 */
 	public Spectrum integrate(Ray r) {
+		return integrate(r, root.intersect(r));
+	}
+
+	public Spectrum integrate(Ray r, HitRecord hitRecord) {
 
-		HitRecord hitRecord = root.intersect(r);
 		// immediately return background color if nothing was hit
 		if(hitRecord == null) { 
 			return new Spectrum(0,0,0);
@@ -101,21 +104,9 @@ public class PointLightIntegrator implements Integrator {
 		Point3f origin = new Point3f();
 		origin.scaleAdd(EPSILON, hit.normal, hit.position);
 
-		Ray shadowRay = new Ray(origin, lightDir);
-
-		HitRecord shadowRayHit = root.intersect(shadowRay);
-
-		if (shadowRayHit == null) {
-			// No object hit
-			return false;
-		}
-
-		if (shadowRayHit.t > 1 + EPSILON) {
-			// Hit is behind the light source
-			return false;
-		}
-
-		return true;
+		// Hits behind the light source do not count
+		Ray shadowRay = new Ray(origin, lightDir, 0, 1 + EPSILON);
+		return root.isOccluded(shadowRay);
 	}
 
 }
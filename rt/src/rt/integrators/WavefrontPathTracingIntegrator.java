@@ -0,0 +1,396 @@
+package rt.integrators;
+
+import rt.*;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * A path tracer that traces a pool of paths together, with the same estimate as the
+ * {@link PathTracingIntegrator}. The state of the paths is stored as a structure of arrays, and each
+ * iteration extends all paths that are still alive by one segment, in four stages:
+ * <ol>
+ * <li>extend: intersects the rays of the paths with the scene,</li>
+ * <li>shade: samples the materials at the hit points, sorted by material, and samples the light sources,</li>
+ * <li>connect: traces the shadow rays of all light samples,</li>
+ * <li>terminate: decides which paths continue, and makes their next rays.</li>
+ * </ol>
+ * Each stage runs one kind of work for all paths, instead of alternating between intersection and
+ * shading code along each path. All paths start together, so they have the same length in every
+ * iteration.
+ * <p>
+ * The random numbers of a path are drawn when the path is added, {@link #SEGMENT_DIMENSIONS} per
+ * segment, so that the result does not depend on the order in which the stages process the paths.
+ * Since they include the Russian roulette, they are drawn only up to the segment at which the path
+ * is terminated.
+ */
+public class WavefrontPathTracingIntegrator extends PathTracingIntegrator implements WavefrontIntegrator
+{
+    /**
+     * The number of paths traced together, for example 64 samples of each pixel of a 4x4 tile.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The random numbers of each segment: two for the shading sample, one to choose the light source,
+     * two for the point on the light source, and one for Russian roulette.
+     */
+    static final int SEGMENT_DIMENSIONS = 6;
+
+    private final int capacity;
+
+    /**
+     * The number of paths added since the last call to {@link #tracePaths()}.
+     */
+    private int size;
+
+    /**
+     * The random numbers of path p start at p * {@link #pathDimensions}. They are allocated when the
+     * first path is added, since the maximum depth is set after construction.
+     */
+    private float[] randoms;
+    private int pathDimensions;
+
+    /*
+     * The state of the paths, indexed by path
+     */
+    private final Ray[] rays;
+    private final HitRecord[] hits;
+    private final Material.ShadingSample[] shadingSamples;
+    private final float[] alphaR, alphaG, alphaB;
+    private final boolean[] previousSpecular;
+    private final Spectrum[] colors;
+
+    /**
+     * The paths that are still alive, and their number.
+     */
+    private int[] alive;
+    private int numAlive;
+
+    /*
+     * The alive paths sorted by material, and the material of each path
+     */
+    private int[] sorted;
+    private final int[] materialIds;
+    private int[] materialCounts = new int[0];
+    private final IdentityHashMap<Material, Integer> materials = new IdentityHashMap<>();
+
+    /*
+     * The shadow rays of the current segment, the paths they belong to, and their contributions if
+     * the light source is not occluded
+     */
+    private final Ray[] shadowRays;
+    private final int[] shadowPaths;
+    private final float[] shadowR, shadowG, shadowB;
+    private int numShadowRays;
+
+    private final Vector3f wIn = new Vector3f();
+    private final Spectrum contribution = new Spectrum();
+
+    public WavefrontPathTracingIntegrator(Scene scene)
+    {
+        this(scene, DEFAULT_CAPACITY);
+    }
+
+    public WavefrontPathTracingIntegrator(Scene scene, int capacity)
+    {
+        super(scene);
+        this.capacity = capacity;
+
+        rays = new Ray[capacity];
+        shadowRays = new Ray[capacity];
+        colors = new Spectrum[capacity];
+        for (int p = 0; p < capacity; p++)
+        {
+            rays[p] = new Ray(new Point3f(), new Vector3f());
+            shadowRays[p] = new Ray(new Point3f(), new Vector3f());
+            colors[p] = new Spectrum();
+        }
+        hits = new HitRecord[capacity];
+        shadingSamples = new Material.ShadingSample[capacity];
+        alphaR = new float[capacity];
+        alphaG = new float[capacity];
+        alphaB = new float[capacity];
+        previousSpecular = new boolean[capacity];
+        alive = new int[capacity];
+        sorted = new int[capacity];
+        materialIds = new int[capacity];
+        shadowPaths = new int[capacity];
+        shadowR = new float[capacity];
+        shadowG = new float[capacity];
+        shadowB = new float[capacity];
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public void addPath(Ray r)
+    {
+        if (size == capacity)
+            throw new IllegalStateException("The pool of paths is full, call tracePaths() first");
+        if (randoms == null)
+        {
+            pathDimensions = SEGMENT_DIMENSIONS * (maxDepth + 1);
+            randoms = new float[capacity * pathDimensions];
+        }
+
+        // Russian roulette is decided in advance, so only the segments up to the last one are drawn
+        int d = size * pathDimensions;
+        for (int k = 0; ; k++, d += SEGMENT_DIMENSIONS)
+        {
+            random.next2D(sample);
+            randoms[d] = sample[0];
+            randoms[d + 1] = sample[1];
+            randoms[d + 2] = random.nextFloat();
+            random.next2D(sample);
+            randoms[d + 3] = sample[0];
+            randoms[d + 4] = sample[1];
+            randoms[d + 5] = random.nextFloat();
+            if (isLastSegment(k, d))
+                break;
+        }
+
+        rays[size].set(r.origin, r.direction, r.tmin, r.tmax);
+        size++;
+    }
+
+    @Override
+    public Spectrum[] tracePaths()
+    {
+        numAlive = 0;
+        for (int p = 0; p < size; p++)
+        {
+            colors[p].set(0, 0, 0);
+            alphaR[p] = alphaG[p] = alphaB[p] = 1;
+            previousSpecular[p] = false;
+            alive[numAlive++] = p;
+        }
+
+        for (int k = 0; numAlive > 0; k++)
+        {
+            extend();
+            shade(k);
+            connect();
+            terminate(k);
+        }
+
+        Arrays.fill(hits, 0, size, null);
+        Arrays.fill(shadingSamples, 0, size, null);
+        size = 0;
+        return colors;
+    }
+
+    /**
+     * Intersects the rays of all alive paths with the scene.
+     */
+    private void extend()
+    {
+        for (int m = 0; m < numAlive; m++)
+        {
+            int p = alive[m];
+            hits[p] = root.intersect(rays[p]);
+        }
+    }
+
+    /**
+     * Ends the paths that leave the scene or hit a light source, and sorts the others by material.
+     * Then samples the material and a light source at the hit point of each path, one material after
+     * the other.
+     */
+    private void shade(int k)
+    {
+        int n = 0;
+        for (int m = 0; m < numAlive; m++)
+        {
+            int p = alive[m];
+            HitRecord hit = hits[p];
+            if (hit == null)
+                continue;
+
+            if (lightList.contains(hit.intersectable))
+            {   // Like in PathTracingIntegrator, the light source only counts for eye rays and after specular surfaces
+                if (k == 0 || previousSpecular[p])
+                    colors[p].add(hit.material.evaluateEmission(hit, hit.w));
+                continue;
+            }
+
+            alive[n++] = p;
+            materialIds[p] = materialId(hit.material);
+        }
+        numAlive = n;
+        sortByMaterial();
+
+        numShadowRays = 0;
+        for (int m = 0; m < numAlive; m++)
+        {
+            int p = alive[m];
+            HitRecord hit = hits[p];
+            int d = p * pathDimensions + k * SEGMENT_DIMENSIONS;
+
+            sample[0] = randoms[d];
+            sample[1] = randoms[d + 1];
+            shadingSamples[p] = hit.material.getShadingSample(hit, sample);
+
+            // Do not add light source contribution on specular surfaces (mirrors, refractive materials)
+            if (!shadingSamples[p].isSpecular)
+                sampleLight(p, hit, d);
+        }
+    }
+
+    /**
+     * Samples a point on a light source like {@link #lightSourceContribution(HitRecord, Spectrum)}, and
+     * stores the shadow ray to it, if its contribution is large enough.
+     */
+    private void sampleLight(int p, HitRecord surfaceHit, int d)
+    {
+        LightGeometry light = lightList.get((int) Math.floor(randoms[d + 2] * lightList.size()));
+        sample[0] = randoms[d + 3];
+        sample[1] = randoms[d + 4];
+        HitRecord lightHit = light.sample(sample);
+        lightHit.p /= lightList.size();
+
+        // Point lights have undefined normal
+        boolean isPointLight = lightHit.normal == null;
+
+        lightHit.w = StaticVecmath.sub(surfaceHit.position, lightHit.position);
+        float d2 = lightHit.w.lengthSquared();
+        lightHit.w.normalize();
+
+        // Conversion to pdf over direction
+        float cos = 1;
+        if (!isPointLight) cos = Math.max(0, lightHit.w.dot(lightHit.normal));
+        float conversionFactor = cos / d2;
+
+        Spectrum emission = lightHit.material.evaluateEmission(lightHit, lightHit.w);
+        float r = emission.r * conversionFactor;
+        float g = emission.g * conversionFactor;
+        float b = emission.b * conversionFactor;
+        if ((float) Math.sqrt(r * r + g * g + b * b) < shadowRayContributionThreshold)
+            return;
+
+        // The contribution if the light source is not occluded
+        wIn.negate(lightHit.w);
+        contribution.mult(emission, surfaceHit.material.evaluateBRDF(surfaceHit, surfaceHit.w, wIn));
+        contribution.mult(Math.max(0, surfaceHit.normal.dot(wIn)));
+        if (!isPointLight) contribution.mult(1 / lightHit.p);
+        contribution.mult(conversionFactor);
+
+        int s = numShadowRays++;
+        Ray shadowRay = shadowRays[s];
+        shadowRay.origin.set(surfaceHit.position);
+        shadowRay.direction.sub(lightHit.position, surfaceHit.position);
+        shadowRay.tmax = 1;
+        epsilonOffset(shadowRay);
+        shadowPaths[s] = p;
+        shadowR[s] = contribution.r * alphaR[p];
+        shadowG[s] = contribution.g * alphaG[p];
+        shadowB[s] = contribution.b * alphaB[p];
+    }
+
+    /**
+     * Traces the shadow rays, and adds the contributions of the light sources that are not occluded.
+     */
+    private void connect()
+    {
+        for (int s = 0; s < numShadowRays; s++)
+        {
+            if (root.isOccluded(shadowRays[s]))
+                continue;
+            Spectrum color = colors[shadowPaths[s]];
+            color.r += shadowR[s];
+            color.g += shadowG[s];
+            color.b += shadowB[s];
+        }
+    }
+
+    /**
+     * Ends the paths that are too long or lose the Russian roulette, and makes the next rays of the
+     * others.
+     */
+    private void terminate(int k)
+    {
+        float q = getTerminationProbability(k);
+        int n = 0;
+        for (int m = 0; m < numAlive; m++)
+        {
+            int p = alive[m];
+            if (isLastSegment(k, p * pathDimensions + k * SEGMENT_DIMENSIONS))
+                continue;
+
+            HitRecord hit = hits[p];
+            Material.ShadingSample shadingSample = shadingSamples[p];
+            float cos = Math.abs(hit.normal.dot(shadingSample.w));
+            float scale = 1 / (shadingSample.p * (1 - q));
+            alphaR[p] = alphaR[p] * shadingSample.brdf.r * cos * scale;
+            alphaG[p] = alphaG[p] * shadingSample.brdf.g * cos * scale;
+            alphaB[p] = alphaB[p] * shadingSample.brdf.b * cos * scale;
+
+            rays[p].set(hit.position, shadingSample.w, 0, Float.POSITIVE_INFINITY);
+            epsilonOffset(rays[p]);
+            previousSpecular[p] = shadingSample.isSpecular;
+            alive[n++] = p;
+        }
+        numAlive = n;
+    }
+
+    /**
+     * Decides like {@link #terminatePath(int)} whether the path ends after segment @param k, whose random
+     * numbers start at @param d.
+     */
+    private boolean isLastSegment(int k, int d)
+    {
+        if (k >= maxDepth) return true;
+        if (k <= minDepth) return false;
+        return randoms[d + 5] < terminationProbability;
+    }
+
+    /**
+     * Returns a small number for each material, in the order in which the materials are first seen.
+     */
+    private int materialId(Material material)
+    {
+        Integer id = materials.get(material);
+        if (id == null)
+        {
+            id = materials.size();
+            materials.put(material, id);
+        }
+        return id;
+    }
+
+    /**
+     * Sorts the alive paths by their material with a counting sort, which keeps the order of the paths
+     * of each material.
+     */
+    private void sortByMaterial()
+    {
+        int numMaterials = materials.size();
+        if (materialCounts.length < numMaterials + 1)
+            materialCounts = new int[numMaterials + 1];
+        Arrays.fill(materialCounts, 0);
+
+        for (int m = 0; m < numAlive; m++)
+        {
+            materialCounts[materialIds[alive[m]] + 1]++;
+        }
+        for (int id = 0; id < numMaterials; id++)
+        {
+            materialCounts[id + 1] += materialCounts[id];
+        }
+        for (int m = 0; m < numAlive; m++)
+        {
+            int p = alive[m];
+            sorted[materialCounts[materialIds[p]]++] = p;
+        }
+
+        int[] swap = alive;
+        alive = sorted;
+        sorted = swap;
+    }
+}
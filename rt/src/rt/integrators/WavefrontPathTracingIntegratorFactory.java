@@ -0,0 +1,32 @@
+package rt.integrators;
+
+import rt.Integrator;
+import rt.Scene;
+
+/**
+ * Makes {@link WavefrontPathTracingIntegrator}s, with the same settings as the
+ * {@link PathTracingIntegratorFactory}.
+ */
+public class WavefrontPathTracingIntegratorFactory extends PathTracingIntegratorFactory
+{
+    int capacity = WavefrontPathTracingIntegrator.DEFAULT_CAPACITY;
+
+    @Override
+    public Integrator make(Scene scene)
+    {
+        WavefrontPathTracingIntegrator integrator = new WavefrontPathTracingIntegrator(scene, capacity);
+        integrator.maxDepth = this.maxDepth;
+        integrator.minDepth = this.minDepth;
+        integrator.terminationProbability = this.terminationProbability;
+        integrator.shadowRayContributionThreshold = this.shadowRayContributionThreshold;
+        return integrator;
+    }
+
+    /**
+     * Sets the number of paths that each render thread traces together.
+     */
+    public void setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+    }
+}
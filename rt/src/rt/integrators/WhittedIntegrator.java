@@ -9,7 +9,7 @@ import rt.*;
 /**
  * Integrator for Whitted style ray tracing.
  */
-public class WhittedIntegrator implements Integrator {
+public class WhittedIntegrator implements PacketIntegrator {
 
     LightList lightList;
     Intersectable root;
@@ -28,6 +28,14 @@ public class WhittedIntegrator implements Integrator {
         return integrate(r, 0);
     }
 
+    public Spectrum integrate(Ray r, HitRecord hitRecord) {
+        if (this.recursionDepth == 0)
+        {
+            return new Spectrum(0, 0, 0);
+        }
+        return shade(hitRecord, 0);
+    }
+
     protected Spectrum integrate(Ray r, int depth) {
 
         if (depth == this.recursionDepth)
@@ -35,7 +43,14 @@ public class WhittedIntegrator implements Integrator {
             return new Spectrum(0, 0, 0);
         }
 
-        HitRecord hitRecord = root.intersect(r);
+        return shade(root.intersect(r), depth);
+    }
+
+    /**
+     * Computes the radiance that arrives along the ray with the hit {@param hitRecord}, which may be null.
+     */
+    private Spectrum shade(HitRecord hitRecord, int depth) {
+
         // Immediately return background color if nothing was hit
         if (hitRecord == null)
         {
@@ -82,13 +97,13 @@ public class WhittedIntegrator implements Integrator {
 
         Ray reflectedRay = new Ray(hitRecord.position, reflectionSample.w);
         Spectrum reflection = integrate(reflectedRay, depth + 1);
-        epsilonTranslation(reflectedRay, reflectedRay.direction);
+        epsilonOffset(reflectedRay);
         Spectrum refraction = new Spectrum(0, 0, 0);
 
         if (refractionSample.w != null) {
             // No total inner reflection
             Ray refractedRay = new Ray(hitRecord.position, refractionSample.w);
-            epsilonTranslation(refractedRay, refractedRay.direction);
+            epsilonOffset(refractedRay);
             refraction = integrate(refractedRay, depth + 1);
             reflection.mult(reflectionSample.brdf);
             refraction.mult(refractionSample.brdf);
@@ -156,6 +171,14 @@ public class WhittedIntegrator implements Integrator {
         ray.translate(d);
     }
 
+    /**
+     * Ignores intersections closer than epsilon to the origin of the {@param ray}, to avoid
+     * self-intersections of rays leaving a surface.
+     */
+    protected void epsilonOffset(Ray ray) {
+        ray.tmin = epsilon;
+    }
+
     public float[][] makePixelSamples(Sampler sampler, int n) {
         return sampler.makeSamples(n, 2);
     }
@@ -170,25 +193,9 @@ public class WhittedIntegrator implements Integrator {
         Point3f origin = new Point3f();
         origin.scaleAdd(this.epsilon, hit.normal, hit.position);
 
-        Ray shadowRay = new Ray(origin, lightDir);
-
-        HitRecord shadowRayHit = root.intersect(shadowRay);
-
-        if (shadowRayHit == null) {
-            // No object hit
-            return false;
-        }
-
-        if (shadowRayHit.t > 1 - epsilon) {
-            // Hit is behind the light source
-            return false;
-        }
-
-        if (!shadowRayHit.material.castsShadows()) {
-            return false;
-        }
-
-        return true;
+        // Hits behind the light source do not count
+        Ray shadowRay = new Ray(origin, lightDir, 0, 1 - epsilon);
+        return root.isOccluded(shadowRay);
     }
 
 }
@@ -2,8 +2,10 @@ package rt.intersectables;
 
 import java.util.Iterator;
 
+import rt.DeferredIntersectable;
 import rt.HitRecord;
 import rt.Intersectable;
+import rt.PrimitiveHit;
 import rt.Ray;
 import rt.bsp.AABoundingBox;
 
@@ -15,23 +17,52 @@ public abstract class Aggregate implements Intersectable {
 	public HitRecord intersect(Ray r) {
 
 		HitRecord hitRecord = null;
-		float t = Float.MAX_VALUE;
+		PrimitiveHit primitiveHit = null;
+		boolean deferred = false;
 		
-		// Intersect all objects in group, return closest hit
+		// Intersect all objects in group, return closest hit. Every hit shrinks
+		// the interval of the ray, so each further hit is closer than the previous.
+		// The hit record of deferred objects is only made for the closest hit.
 		Iterator<Intersectable> it = iterator();
 		while(it.hasNext())
 		{
 			Intersectable o = it.next();
-			HitRecord tmp = o.intersect(r);
-			if(tmp!=null && tmp.t<t)
+			if(o instanceof DeferredIntersectable)
 			{
-				t = tmp.t;
-				hitRecord = tmp;
+				if(primitiveHit==null)
+					primitiveHit = new PrimitiveHit();
+				if(((DeferredIntersectable) o).intersect(r, primitiveHit))
+					deferred = true;
 			}
+			else
+			{
+				HitRecord tmp = o.intersect(r);
+				if(tmp!=null)
+				{
+					hitRecord = tmp;
+					deferred = false;
+				}
+			}
+		}
+		if(deferred)
+		{
+			hitRecord = primitiveHit.makeHitRecord(r);
 		}
 		return hitRecord;
 	}
 	
+	public boolean isOccluded(Ray r) {
+
+		// Any blocking object suffices
+		Iterator<Intersectable> it = iterator();
+		while(it.hasNext())
+		{
+			if(it.next().isOccluded(r))
+				return true;
+		}
+		return false;
+	}
+	
 	public abstract Iterator<Intersectable> iterator();
 
 	public int count()
@@ -54,7 +85,8 @@ public abstract class Aggregate implements Intersectable {
 			return null;
 		}
 
-		AABoundingBox boundingBox = it.next().getBoundingBox();
+		// Copy the first box, it is enlarged below and must not alter the object's own box
+		AABoundingBox boundingBox = new AABoundingBox(it.next().getBoundingBox());
 
 		while(it.hasNext())
 		{
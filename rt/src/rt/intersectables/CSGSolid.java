@@ -52,15 +52,31 @@ public abstract class CSGSolid implements Intersectable {
 		{
 			HitRecord firstHit = it.next().hitRecord;
 			
-			if(firstHit!=null && firstHit.t>0.f)
-			{		
+			if(firstHit!=null && firstHit.t>r.tmin)
+			{
+				// The boundaries are sorted, no later hit is within the interval of the ray
+				if(firstHit.t>=r.tmax)
+					return null;
+
 				firstHit.intersectable = this;
+				r.tmax = firstHit.t;
 				return firstHit;			
 			}
 		}
 				
 		return null;
 	}
+	
+	/**
+	 * CSG solids need all interval boundaries to decide whether the ray is blocked,
+	 * so the test falls back to {@link #intersect(Ray)}.
+	 */
+	public boolean isOccluded(Ray r) {
+		float tmax = r.tmax;
+		HitRecord hit = intersect(r);
+		r.tmax = tmax;
+		return hit != null && hit.material.castsShadows();
+	}
 		
 	/**
 	 * Compute the boundaries of the intersection intervals of this CSG solid with a ray. 
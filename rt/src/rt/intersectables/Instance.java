@@ -4,10 +4,11 @@ import rt.bsp.AABoundingBox;
 import rt.HitRecord;
 import rt.Intersectable;
 import rt.Ray;
+import rt.ScalarVecmath;
+import rt.Scratch;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Point3f;
-import javax.vecmath.Vector3f;
 
 /**
  * Created by adrian on 02.03.16.
@@ -57,21 +58,46 @@ public class Instance implements Intersectable {
 
     @Override
     public HitRecord intersect(Ray r) {
+        Scratch scratch = Scratch.get();
+        Ray transformedRay = scratch.acquireRay();
+        try {
+            transform(r, transformedRay);
+            HitRecord hit = reference.intersect(transformedRay);
 
-        Point3f newOrigin = new Point3f(r.origin);
-        Vector3f newDirection = new Vector3f(r.direction);
-        inv_transformation.transform(newOrigin);
-        inv_transformation.transform(newDirection);
+            if (hit == null) // No intersection
+                return null;
 
-        Ray transformedRay = new Ray(newOrigin, newDirection);
-        HitRecord hit = reference.intersect(transformedRay);
+            r.tmax = transformedRay.tmax;
 
-        if (hit == null) // No intersection
-            return null;
+            hit.transform(transformation, inv_transformation);
 
-        hit.transform(transformation, inv_transformation);
+            return hit;
+        } finally {
+            scratch.releaseRay();
+        }
+    }
+
+    @Override
+    public boolean isOccluded(Ray r) {
+        Scratch scratch = Scratch.get();
+        Ray transformedRay = scratch.acquireRay();
+        try {
+            transform(r, transformedRay);
+            return reference.isOccluded(transformedRay);
+        } finally {
+            scratch.releaseRay();
+        }
+    }
 
-        return hit;
+    /**
+     * Transforms the ray {@param r} to object coordinates. The direction is not normalized, so
+     * t and the interval of the ray are the same in object coordinates.
+     */
+    private void transform(Ray r, Ray transformedRay) {
+        ScalarVecmath.transformPoint(inv_transformation, r.origin, transformedRay.origin);
+        ScalarVecmath.transformVector(inv_transformation, r.direction, transformedRay.direction);
+        transformedRay.tmin = r.tmin;
+        transformedRay.tmax = r.tmax;
     }
 
     @Override
@@ -4,7 +4,7 @@ import java.util.LinkedList;
 import java.util.Iterator;
 import rt.*;
 
-public class IntersectableList extends Aggregate {
+public class IntersectableList extends Aggregate implements PacketIntersectable {
 
 	public LinkedList<Intersectable> list;
 	
@@ -23,6 +23,20 @@ public class IntersectableList extends Aggregate {
 		return list.iterator();
 	}
 
+	/**
+	 * Intersects the packet with each object in turn, the objects that do not support
+	 * packets are intersected ray by ray.
+	 */
+	public void intersect(RayPacket packet)
+	{
+		for (Intersectable o : list) {
+			if (o instanceof PacketIntersectable)
+				((PacketIntersectable) o).intersect(packet);
+			else
+				packet.intersectEach(o);
+		}
+	}
+
 	@Override
 	public int count()
 	{
@@ -3,8 +3,12 @@ package rt.intersectables;
 import java.util.Iterator;
 
 import rt.bsp.AABoundingBox;
+import rt.HitRecord;
 import rt.Intersectable;
 import rt.Material;
+import rt.PrimitiveHit;
+import rt.Ray;
+import rt.Scratch;
 import rt.Spectrum;
 import rt.materials.Diffuse;
 
@@ -36,11 +40,28 @@ public class Mesh extends Aggregate {
 	 * and {@link Mesh#normals} arrays that store vertex and normal coordinates.
 	 */
 	public int[] indices;
+
+	/**
+	 * The data used to intersect the triangles, {@link #TRIANGLE_DATA_SIZE} floats per triangle:
+	 * the x,y,z coordinates of the first vertex, followed by those of the edges from the first
+	 * to the second and from the first to the third vertex. Computed from the vertex and index
+	 * arrays by {@link #updateTriangleData()}.
+	 */
+	public float[] triangleData;
+
+	public static final int TRIANGLE_DATA_SIZE = 9;
 	
 	/**
 	 * Array of triangles stored in the mesh.
 	 */
 	private MeshTriangle[] triangles;
+
+	/**
+	 * All triangles in one range, to intersect them without calls per triangle. Built on the
+	 * first intersection with the mesh itself, since meshes in acceleration structures are
+	 * only intersected triangle by triangle or with the blocks of the structure.
+	 */
+	private volatile TriangleBlocks blocks;
 	
 	/**
 	 * A material.
@@ -65,6 +86,58 @@ public class Mesh extends Aggregate {
 		for (int i = 0; i < indices.length / 3; i++) {
 			triangles[i] = new MeshTriangle(this, i);
 		}
+		updateTriangleData();
+	}
+
+	/**
+	 * Computes the {@link #triangleData} from the vertex and index arrays. Must be called
+	 * whenever the vertices are modified. Acceleration structures built for the triangles
+	 * keep their own copy of the data and must be built again.
+	 */
+	public void updateTriangleData()
+	{
+		int n = indices.length / 3;
+		float[] data = new float[TRIANGLE_DATA_SIZE * n];
+		for (int i = 0; i < n; i++) {
+			int v0 = indices[i*3] * 3;
+			int v1 = indices[i*3+1] * 3;
+			int v2 = indices[i*3+2] * 3;
+			int k = TRIANGLE_DATA_SIZE * i;
+			for (int c = 0; c < 3; c++) {
+				data[k+c] = vertices[v0+c];
+				data[k+3+c] = vertices[v1+c] - vertices[v0+c];
+				data[k+6+c] = vertices[v2+c] - vertices[v0+c];
+			}
+		}
+		triangleData = data;
+		blocks = null;
+	}
+
+	/**
+	 * Returns the {@link #blocks}, which are built by the first call. Threads that call it at
+	 * the same time may each build them, which is harmless, as the blocks are only read.
+	 */
+	private TriangleBlocks getBlocks() {
+		TriangleBlocks b = blocks;
+		if (b == null) {
+			b = new TriangleBlocks(TriangleBlocks.DEFAULT_WIDTH);
+			b.add(triangles, triangles.length);
+			blocks = b;
+		}
+		return b;
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		PrimitiveHit hit = new PrimitiveHit();
+		if (!getBlocks().intersect(0, triangles.length, r, hit))
+			return null;
+		return hit.makeHitRecord(r);
+	}
+
+	@Override
+	public boolean isOccluded(Ray r) {
+		return getBlocks().isOccluded(0, triangles.length, r, Scratch.get().hit);
 	}
 
 	public boolean hasNormals(){
@@ -9,10 +9,10 @@ import rt.bsp.AABoundingBox;
  * Defines a triangle by referring back to a {@link Mesh}
  * and its vertex and index arrays. 
  */
-public class MeshTriangle implements Intersectable {
+public class MeshTriangle implements DeferredIntersectable {
 
-	private Mesh mesh;
-	private int index;
+	final Mesh mesh;
+	final int index;
 	
 	/**
 	 * Make a triangle.
@@ -28,99 +28,131 @@ public class MeshTriangle implements Intersectable {
 	
 	public HitRecord intersect(Ray r)
 	{
-		Point3f[] vertices = getVertexPositions();
-
-		// The three vertex positions of the triangle
-		Point3f A = vertices[0];
-		Point3f B = vertices[1];
-		Point3f C = vertices[2];
-
-		// Edge vectors b->a and c->a
-		Vector3f ba = new Vector3f();
-		ba.sub(A, B);
-		Vector3f ca = new Vector3f();
-		ca.sub(A, C);
-
-		Matrix3f mat = new Matrix3f();
-		mat.setColumn(0, ba);
-		mat.setColumn(1, ca);
-		mat.setColumn(2, r.direction);
-
-		Vector3f rightHandSide = new Vector3f();
-		rightHandSide.sub(A, r.origin);
-
-		/*
-		 * Computation of beta, gamma and t according to Shirley, p. 79
-		 */
-		float a = mat.m00;
-		float b = mat.m10;
-		float c = mat.m20;
-		float d = mat.m01;
-		float e = mat.m11;
-		float f = mat.m21;
-		float g = mat.m02;
-		float h = mat.m12;
-		float i = mat.m22;
-
-		float j = rightHandSide.x;
-		float k = rightHandSide.y;
-		float l = rightHandSide.z;
-
-		float ei_minus_hf = e * i - h * f;
-		float gf_minus_di = g * f - d * i;
-		float dh_minus_eg = d * h - e * g;
-		float ak_minus_jb = a * k - j * b;
-		float jc_minus_al = j * c - a * l;
-		float bl_minus_kc = b * l - k * c;
-
-		float m = a * ei_minus_hf + b * gf_minus_di + c * dh_minus_eg;
-
-		float t = - (f * ak_minus_jb + e * jc_minus_al + d * bl_minus_kc) / m;
-
-		if (t <= 0) // Intersection is behind the eye
-			return null;
-
-		float gamma = (i * ak_minus_jb + h * jc_minus_al + g * bl_minus_kc) / m;
-
-		if (gamma < 0 || gamma > 1) // Intersection is outside the triangle
+		PrimitiveHit hit = new PrimitiveHit();
+		if (!intersect(r, hit))
 			return null;
+		return makeHitRecord(r, hit);
+	}
 
-		float beta = (j * ei_minus_hf + k * gf_minus_di + l * dh_minus_eg) / m;
+	/**
+	 * Finds t and the barycentric coordinates beta and gamma of the hit point, which are stored as
+	 * {@link PrimitiveHit#u} and {@link PrimitiveHit#v}.
+	 */
+	public boolean intersect(Ray r, PrimitiveHit hit)
+	{
+		if (!findHit(r, hit))
+			return false;
 
-		if (beta < 0 || beta > 1 - gamma) // Intersection is outside the triangle
-			return null;
+		r.tmax = hit.t;
+		hit.primitive = this;
+		return true;
+	}
 
+	/**
+	 * Interpolates the shading data with the barycentric coordinates found by {@link #intersect(Ray, PrimitiveHit)}.
+	 */
+	public HitRecord makeHitRecord(Ray r, PrimitiveHit hit)
+	{
 		// Valid intersection point on triangle
-		Point3f q = r.pointAt(t);
+		Point3f q = r.pointAt(hit.t);
 
 		Vector3f w = StaticVecmath.negate(r.direction);
 
-		// Compute barycentric coordinates for interpolation
-		float[] bary = barycentricCoordinates(q);
-		float bary_alpha = bary[0];
-		float bary_beta = bary[1];
-		float bary_gamma = bary[2];
+		// Barycentric coordinates for interpolation
+		float bary_beta = hit.u;
+		float bary_gamma = hit.v;
+		float bary_alpha = 1 - bary_beta - bary_gamma;
 
-		Vector3f normal;
+		int i0 = mesh.indices[index*3];
+		int i1 = mesh.indices[index*3+1];
+		int i2 = mesh.indices[index*3+2];
+
+		Vector3f normal = new Vector3f();
 		if (mesh.hasNormals()) {
 			// Interpolate vertex normals
-			Vector3f[] vertexNormals = getVertexNormals();
-			normal = interp(vertexNormals[0], vertexNormals[1], vertexNormals[2], bary_alpha, bary_beta, bary_gamma);
+			ScalarVecmath.interpolate(mesh.normals, i0*3, i1*3, i2*3, bary_alpha, bary_beta, bary_gamma, normal);
 		} else {
-			normal = new Vector3f();
-			normal.cross(ba, ca);
+			// Cross product of the edge vectors a->b and a->c
+			int k = Mesh.TRIANGLE_DATA_SIZE * index;
+			ScalarVecmath.cross(mesh.triangleData, k+3, k+6, normal);
 		}
 		normal.normalize();
 
-		Point2f texCoord = new Point2f(0, 0);
+		float u = 0, v = 0;
 		if (mesh.hasTextureCoordinates()) {
 			// Interpolate texture coordinate
-			Point2f[] texCoords = getTextureCoordinates();
-			texCoord = interp(texCoords[0], texCoords[1], texCoords[2], bary_alpha, bary_beta, bary_gamma);
+			u = ScalarVecmath.interpolate(mesh.texCoords, i0*2, i1*2, i2*2, bary_alpha, bary_beta, bary_gamma);
+			v = ScalarVecmath.interpolate(mesh.texCoords, i0*2+1, i1*2+1, i2*2+1, bary_alpha, bary_beta, bary_gamma);
 		}
 
-		HitRecord hit = new HitRecord(t, q, normal, w, mesh, mesh.material, texCoord.x, texCoord.y);
-		return hit;
+		return new HitRecord(hit.t, q, normal, w, mesh, mesh.material, u, v);
+	}
+
+	public boolean isOccluded(Ray r)
+	{
+		return mesh.material.castsShadows() && findHit(r, Scratch.get().hit);
+	}
+
+	private boolean findHit(Ray r, PrimitiveHit hit)
+	{
+		return findHit(mesh.triangleData, Mesh.TRIANGLE_DATA_SIZE * index, 1,
+				r.origin.x, r.origin.y, r.origin.z, r.direction.x, r.direction.y, r.direction.z,
+				r.tmin, r.tmax, hit);
+	}
+
+	/**
+	 * Computes t and the barycentric coordinates of the intersection with the algorithm of
+	 * Moller and Trumbore. All mesh triangles are intersected by this method, also those in
+	 * {@link TriangleBlocks}, so that they find exactly the same hits. The x,y,z coordinates of
+	 * the first vertex and of the two edges, as in {@link Mesh#triangleData}, are read from
+	 * @param data at @param k, k + @param stride, k + 2*stride, and so on. The bytecode must stay
+	 * below the size up to which HotSpot inlines hot methods (325 bytes), or the loops of the
+	 * blocks call it for every triangle.
+	 *
+	 * @param hit receives t, beta and gamma
+	 * @return true, if the triangle is hit within (tmin, tmax)
+	 */
+	static boolean findHit(float[] data, int k, int stride, float ox, float oy, float oz,
+			float dx, float dy, float dz, float tmin, float tmax, PrimitiveHit hit)
+	{
+		float e1x = data[k+3*stride], e1y = data[k+4*stride], e1z = data[k+5*stride];
+		float e2x = data[k+6*stride], e2y = data[k+7*stride], e2z = data[k+8*stride];
+
+		// p = d x e2, its dot product with e1 is the determinant of the system
+		float px = dy * e2z - dz * e2y;
+		float py = dz * e2x - dx * e2z;
+		float pz = dx * e2y - dy * e2x;
+		// If the ray is parallel to the triangle, the determinant is 0 and beta is infinite or NaN
+		float invDet = 1 / (e1x * px + e1y * py + e1z * pz);
+
+		// Vector from the first vertex to the origin of the ray
+		float sx = ox - data[k];
+		float sy = oy - data[k+stride];
+		float sz = oz - data[k+2*stride];
+
+		// The comparisons are written such that NaNs are rejected. That beta is at most 1
+		// follows from the test of gamma.
+		float beta = (sx * px + sy * py + sz * pz) * invDet;
+		if (!(beta >= 0)) // Intersection is outside the triangle
+			return false;
+
+		// q = s x e1
+		float qx = sy * e1z - sz * e1y;
+		float qy = sz * e1x - sx * e1z;
+		float qz = sx * e1y - sy * e1x;
+
+		float gamma = (dx * qx + dy * qy + dz * qz) * invDet;
+		if (!(gamma >= 0 && beta + gamma <= 1)) // Intersection is outside the triangle
+			return false;
+
+		float t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+		if (!(t > tmin && t < tmax)) // Intersection is behind the eye or farther than a known hit
+			return false;
+
+		hit.t = t;
+		hit.u = beta;
+		hit.v = gamma;
+		return true;
 	}
 
 	/**
@@ -148,22 +180,6 @@ public class MeshTriangle implements Intersectable {
 		return new float[] {alpha, beta, gamma};
 	}
 
-	private Vector3f interp(Vector3f v1, Vector3f v2, Vector3f v3, float alpha, float beta, float gamma) {
-		Vector3f interp = new Vector3f();
-		interp.scaleAdd(alpha, v1, interp);
-		interp.scaleAdd(beta, v2, interp);
-		interp.scaleAdd(gamma, v3, interp);
-		return interp;
-	}
-
-	private Point2f interp(Point2f t1, Point2f t2, Point2f t3, float alpha, float beta, float gamma){
-		Point2f interp = new Point2f();
-		interp.scaleAdd(alpha, t1, interp);
-		interp.scaleAdd(beta, t2, interp);
-		interp.scaleAdd(gamma, t3, interp);
-		return interp;
-	}
-
 	private float signedArea(Point3f p1, Point3f p2, Point3f p3) {
 		Vector3f v = StaticVecmath.sub(p2, p1);
 		Vector3f w = StaticVecmath.sub(p3, p1);
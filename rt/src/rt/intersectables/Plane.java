@@ -35,46 +35,46 @@ public class Plane implements Intersectable {
 
 	public HitRecord intersect(Ray r) {
 
-		float tmp = normal.dot(r.direction);
-
-		if (tmp != 0) {
-			float t = -(normal.dot(new Vector3f(r.origin)) + d) / tmp;
-			if (t <= 0)
-				return null;
-			Point3f position = r.pointAt(t);
-			Vector3f retNormal = new Vector3f(normal);
-			// wIn is incident direction; convention is that it points away from
-			// surface
-			Vector3f wIn = new Vector3f(r.direction);
-			wIn.negate();
-			wIn.normalize();
-			HitRecord hit = new HitRecord(t, position, retNormal, wIn, this, material,0.f, 0.f);
-
-			// Compute texture coordinates
-			Tuple2f texCoords = getTexCoords(position, hit.t1, hit.t2);
-			hit.u = texCoords.x;
-			hit.v = texCoords.y;
-
-			return hit;
-		} else {
+		float t = planeDistance(r);
+		if (Float.isNaN(t) || t <= r.tmin || t >= r.tmax)
 			return null;
-		}
-	}
-
-	private Tuple2f getTexCoords(Point3f position, Vector3f tangentU, Vector3f tangentV) {
-		Vector3f p = new Vector3f(position);
 
-		// Center of plane (closest point to origin)
-		Vector3f c = new Vector3f(normal);
-		c.scale(d);
+		r.tmax = t;
+		Point3f position = r.pointAt(t);
+		Vector3f retNormal = new Vector3f(normal);
+		// wIn is incident direction; convention is that it points away from
+		// surface
+		Vector3f wIn = new Vector3f(r.direction);
+		wIn.negate();
+		wIn.normalize();
+		HitRecord hit = new HitRecord(t, position, retNormal, wIn, this, material,0.f, 0.f);
+
+		// Compute texture coordinates, relative to the center of the plane (closest point to origin)
+		float px = position.x - normal.x * d;
+		float py = position.y - normal.y * d;
+		float pz = position.z - normal.z * d;
+		hit.u = ScalarVecmath.dot(px, py, pz, hit.t1.x, hit.t1.y, hit.t1.z);
+		hit.v = ScalarVecmath.dot(px, py, pz, hit.t2.x, hit.t2.y, hit.t2.z);
+
+		return hit;
+	}
 
-		Vector3f d = new Vector3f();
-		d.sub(p, c);
+	public boolean isOccluded(Ray r) {
+		if (!material.castsShadows())
+			return false;
 
-		float u = d.dot(tangentU);
-		float v = d.dot(tangentV);
+		float t = planeDistance(r);
+		return t > r.tmin && t < r.tmax;
+	}
 
-		return new Point2f(u, v);
+	/**
+	 * @return the ray parameter t of the intersection with the plane, NaN if the ray is parallel to the plane
+	 */
+	float planeDistance(Ray r) {
+		float tmp = normal.x * r.direction.x + normal.y * r.direction.y + normal.z * r.direction.z;
+		if (tmp == 0)
+			return Float.NaN;
+		return -(normal.x * r.origin.x + normal.y * r.origin.y + normal.z * r.origin.z + d) / tmp;
 	}
 
 	@Override
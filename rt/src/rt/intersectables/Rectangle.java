@@ -57,17 +57,13 @@ public class Rectangle extends Plane
     @Override
     public HitRecord intersect(Ray r)
     {
-        HitRecord planeHit = super.intersect(r);
+        // Test the bounds first, such that the plane only makes a hit record
+        // and shrinks the interval of the ray if the rectangle is hit
+        float t = planeDistance(r);
+        if (!(t > r.tmin && t < r.tmax)) return null;
 
-        // The ray did not hit the plane
-        if(planeHit == null) return null;
-
-        // Difference between rectangle center and hit position
-        Vector3f delta = StaticVecmath.sub(planeHit.position, anchor());
-
-        // Projected length of delta vector on edges
-        float p1 = right.dot(delta) / length1;
-        float p2 = up.dot(delta) / length2;
+        float p1 = projectionOnEdge(r, t, right, length1);
+        float p2 = projectionOnEdge(r, t, up, length2);
 
         if(p1 < 0 || p2 < 0|| p1 > length1 || p2 > length2)
         {
@@ -76,12 +72,39 @@ public class Rectangle extends Plane
         }
         else // Rectangle is hit
         {
+            HitRecord planeHit = super.intersect(r);
+            if(planeHit == null) return null;
             planeHit.u = p1 / length1;
             planeHit.v = p2 / length2;
             return planeHit;
         }
     }
 
+    @Override
+    public boolean isOccluded(Ray r)
+    {
+        if (!material.castsShadows()) return false;
+
+        float t = planeDistance(r);
+        if (!(t > r.tmin && t < r.tmax)) return false;
+
+        float p1 = projectionOnEdge(r, t, right, length1);
+        float p2 = projectionOnEdge(r, t, up, length2);
+
+        return p1 >= 0 && p2 >= 0 && p1 <= length1 && p2 <= length2;
+    }
+
+    /**
+     * Projected length on the {@param edge} of the difference between the hit position at {@param t} and the anchor.
+     */
+    private float projectionOnEdge(Ray r, float t, Vector3f edge, float edgeLength)
+    {
+        float dx = r.origin.x + t * r.direction.x - anchor.x;
+        float dy = r.origin.y + t * r.direction.y - anchor.y;
+        float dz = r.origin.z + t * r.direction.z - anchor.z;
+        return (edge.x * dx + edge.y * dy + edge.z * dz) / edgeLength;
+    }
+
     private static Vector3f computeNormal(Vector3f edge1, Vector3f edge2)
     {
         Vector3f normal = StaticVecmath.cross(edge1, edge2);
@@ -12,7 +12,7 @@ import javax.vecmath.Vector3f;
 /**
  * Created by Adrian on 25.02.2016.
  */
-public class Sphere implements Intersectable {
+public class Sphere implements DeferredIntersectable {
 
     public static final Point3f DEFAULT_CENTER = new Point3f(0, 0, 0);
     public static final float DEFAULT_RADIUS = 1;
@@ -33,54 +33,78 @@ public class Sphere implements Intersectable {
 
     @Override
     public HitRecord intersect(Ray r) {
-        // Notation following http://www.siggraph.org/education/materials/HyperGraph/raytrace/rtinter1.htm
-
-        Vector3f d = new Vector3f(r.direction);
-        Point3f o = new Point3f(r.origin);
-        float c1 = (o.x - center.x);
-        float c2 = (o.y - center.y);
-        float c3 = (o.z - center.z);
-
-        float a = d.dot(d);
-        float b = 2 * (d.x * c1 + d.y * c2 + d.z * c3);
-        float c = c1 * c1 + c2 * c2 + c3 * c3 - radius * radius;
-
-        float discriminant = b * b - 4 * a * c;
-
-        if (discriminant < 0){
-            // No intersection
+        PrimitiveHit hit = new PrimitiveHit();
+        if (!intersect(r, hit)) {
             return null;
         }
+        return makeHitRecord(r, hit);
+    }
 
-        float t;
-        float t0 = (-b - (float) Math.sqrt(discriminant)) / (2 * a);
-
-        if(t0 > 0){
-            t = t0;
-        } else {
-            float t1 = (-b + (float) Math.sqrt(discriminant)) / (2 * a);
-            if(t1 > 0){
-                t = t1;
-            } else {
-                // No intersection
-                return null;
-            }
+    /**
+     * Only finds t, the parameters of the {@link PrimitiveHit} are not used.
+     */
+    @Override
+    public boolean intersect(Ray r, PrimitiveHit hit) {
+        float t = findT(r);
+        if (Float.isNaN(t)) {
+            return false;
         }
+        r.tmax = t;
+        hit.t = t;
+        hit.primitive = this;
+        return true;
+    }
 
-        Point3f position = new Point3f(d);
-        position.scale(t);
-        position.add(o);
+    @Override
+    public HitRecord makeHitRecord(Ray r, PrimitiveHit hit) {
+        Point3f position = r.pointAt(hit.t);
 
         Vector3f normal = new Vector3f(position);
         normal.sub(this.center);
         normal.normalize();
 
-        Vector3f w = new Vector3f(d);
+        Vector3f w = new Vector3f(r.direction);
         w.negate();
 
         Tuple2f texCoords = getUVcoordinates(normal);
 
-        return new HitRecord(t, position, normal, w, this, material, texCoords.x, texCoords.y);
+        return new HitRecord(hit.t, position, normal, w, this, material, texCoords.x, texCoords.y);
+    }
+
+    @Override
+    public boolean isOccluded(Ray r) {
+        return material.castsShadows() && !Float.isNaN(findT(r));
+    }
+
+    /**
+     * Returns the ray parameter t of the first intersection within the interval of the ray, NaN if there is none.
+     */
+    private float findT(Ray r) {
+        // Notation following http://www.siggraph.org/education/materials/HyperGraph/raytrace/rtinter1.htm
+
+        float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+        float c1 = r.origin.x - center.x;
+        float c2 = r.origin.y - center.y;
+        float c3 = r.origin.z - center.z;
+
+        float a = dx * dx + dy * dy + dz * dz;
+        float b = 2 * (dx * c1 + dy * c2 + dz * c3);
+        float c = c1 * c1 + c2 * c2 + c3 * c3 - radius * radius;
+
+        float discriminant = b * b - 4 * a * c;
+
+        if (discriminant < 0) {
+            // No intersection
+            return Float.NaN;
+        }
+
+        float sqrt = (float) Math.sqrt(discriminant);
+        float t0 = (-b - sqrt) / (2 * a);
+        if (t0 > r.tmin) {
+            return t0 < r.tmax ? t0 : Float.NaN;
+        }
+        float t1 = (-b + sqrt) / (2 * a);
+        return t1 > r.tmin && t1 < r.tmax ? t1 : Float.NaN;
     }
 
     static Tuple2f getUVcoordinates(Vector3f normal) {
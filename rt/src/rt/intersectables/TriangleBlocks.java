@@ -0,0 +1,175 @@
+package rt.intersectables;
+
+import java.util.Arrays;
+
+import rt.PrimitiveHit;
+import rt.Ray;
+import rt.RayPacket;
+
+/**
+ * Stores mesh triangles in blocks of {@link #getWidth()} triangles to intersect many triangles
+ * in one loop, without a call per triangle. Within a block, the {@link Mesh#triangleData} is
+ * stored component by component: first the x coordinates of the first vertices of all
+ * triangles of the block, then their y coordinates, and so on. Ranges of triangles, like those
+ * in a leaf of an acceleration structure, start at the beginning of a block.
+ * <p>
+ * This is the layout in which a SIMD kernel loads one component of all triangles of a block at
+ * once. The lanes of a block are processed by a scalar loop, with the same test as
+ * {@link MeshTriangle}, so the hits are exactly the same as those of the single triangles.
+ * The data is copied from the meshes when the triangles are added.
+ */
+public class TriangleBlocks {
+
+	public static final int DEFAULT_WIDTH = 8;
+
+	private final int width;
+
+	/**
+	 * {@link Mesh#TRIANGLE_DATA_SIZE} * {@link #width} floats per block.
+	 */
+	private float[] data;
+	private MeshTriangle[] triangles;
+
+	/**
+	 * The number of lanes in use, including the unused lanes at the end of each range.
+	 */
+	private int size;
+
+	/**
+	 * @param width the number of triangles per block, for example 4, 8 or 16
+	 */
+	public TriangleBlocks(int width)
+	{
+		if (width < 1)
+			throw new IllegalArgumentException("Width must be positive: " + width);
+		this.width = width;
+		this.data = new float[0];
+		this.triangles = new MeshTriangle[0];
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Adds the first @param count triangles of @param t as a new range.
+	 *
+	 * @return the index of the first triangle of the range, which is passed to
+	 * {@link #intersect(int, int, Ray, PrimitiveHit)} and {@link #isOccluded(int, int, Ray, PrimitiveHit)}
+	 */
+	public int add(MeshTriangle[] t, int count)
+	{
+		int start = size;
+		int blocks = (count + width - 1) / width;
+		size += blocks * width;
+		if (size > triangles.length) {
+			int capacity = Math.max(size, 2 * triangles.length);
+			triangles = Arrays.copyOf(triangles, capacity);
+			data = Arrays.copyOf(data, Mesh.TRIANGLE_DATA_SIZE * capacity);
+		}
+
+		for (int i = 0; i < count; i++) {
+			int lane = start + i;
+			triangles[lane] = t[i];
+			float[] source = t[i].mesh.triangleData;
+			int k = Mesh.TRIANGLE_DATA_SIZE * t[i].index;
+			int base = blockBase(lane) + lane % width;
+			for (int c = 0; c < Mesh.TRIANGLE_DATA_SIZE; c++) {
+				data[base + c*width] = source[k+c];
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index in {@link #data} of the first component of the block of @param lane.
+	 */
+	private int blockBase(int lane)
+	{
+		return Mesh.TRIANGLE_DATA_SIZE * (lane - lane % width);
+	}
+
+	/**
+	 * Intersects the @param count triangles starting at @param start, like
+	 * {@link MeshTriangle#intersect(Ray, PrimitiveHit)} for each of them.
+	 *
+	 * @return true, if a triangle is hit within the interval of the ray, which is then
+	 * shortened to the closest hit and recorded in @param hit
+	 */
+	public boolean intersect(int start, int count, Ray r, PrimitiveHit hit)
+	{
+		if (!intersect(start, count, r.origin.x, r.origin.y, r.origin.z,
+				r.direction.x, r.direction.y, r.direction.z, r.tmin, r.tmax, hit))
+			return false;
+		r.tmax = hit.t;
+		return true;
+	}
+
+	/**
+	 * Intersects the triangles with ray @param i of @param packet, like
+	 * {@link #intersect(int, int, Ray, PrimitiveHit)}.
+	 */
+	public boolean intersect(int start, int count, RayPacket packet, int i, PrimitiveHit hit)
+	{
+		if (!intersect(start, count, packet.ox[i], packet.oy[i], packet.oz[i],
+				packet.dx[i], packet.dy[i], packet.dz[i], packet.tmin[i], packet.tmax[i], hit))
+			return false;
+		packet.tmax[i] = hit.t;
+		return true;
+	}
+
+	private boolean intersect(int start, int count, float ox, float oy, float oz,
+			float dx, float dy, float dz, float tmin, float tmax, PrimitiveHit hit)
+	{
+		final int w = width;
+		final float[] d = data;
+		int closest = -1;
+
+		int end = start + count;
+		for (int block = start; block < end; block += w) {
+			int n = Math.min(w, end - block);
+			int base = blockBase(block);
+			for (int l = 0; l < n; l++) {
+				if (MeshTriangle.findHit(d, base + l, w, ox, oy, oz, dx, dy, dz, tmin, tmax, hit)) {
+					// Later triangles must be closer than this one
+					tmax = hit.t;
+					closest = block + l;
+				}
+			}
+		}
+
+		if (closest < 0)
+			return false;
+		hit.primitive = triangles[closest];
+		return true;
+	}
+
+	/**
+	 * Tests if any of the @param count triangles starting at @param start blocks the ray,
+	 * like {@link MeshTriangle#isOccluded(Ray)} for each of them.
+	 *
+	 * @param hit receives the hits that are found, such as {@link rt.Scratch#hit}, so that the
+	 * test does not allocate
+	 */
+	public boolean isOccluded(int start, int count, Ray r, PrimitiveHit hit)
+	{
+		final int w = width;
+		final float[] d = data;
+		float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+		float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+		float tmin = r.tmin, tmax = r.tmax;
+
+		int end = start + count;
+		for (int block = start; block < end; block += w) {
+			int n = Math.min(w, end - block);
+			int base = blockBase(block);
+			for (int l = 0; l < n; l++) {
+				if (MeshTriangle.findHit(d, base + l, w, ox, oy, oz, dx, dy, dz, tmin, tmax, hit)
+						&& triangles[block + l].mesh.material.castsShadows())
+					return true;
+			}
+		}
+		return false;
+	}
+}
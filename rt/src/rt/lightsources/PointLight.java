@@ -32,6 +32,13 @@ public class PointLight implements LightGeometry {
 		return null;
 	}
 
+	/**
+	 * A point never blocks a ray.
+	 */
+	public boolean isOccluded(Ray r) {
+		return false;
+	}
+
 	@Override
 	/**
 	 * A point light does not have a bounding box
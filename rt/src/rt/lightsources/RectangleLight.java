@@ -70,6 +70,12 @@ public class RectangleLight implements LightGeometry
         return hit;
     }
 
+    @Override
+    public boolean isOccluded(Ray r)
+    {
+        return rectangle.isOccluded(r);
+    }
+
     @Override
     public AABoundingBox getBoundingBox()
     {
@@ -2,8 +2,9 @@ package rt.materials;
 
 import rt.HitRecord;
 import rt.Material;
+import rt.ScalarVecmath;
+import rt.Scratch;
 import rt.Spectrum;
-import rt.StaticVecmath;
 
 import javax.vecmath.Vector3f;
 
@@ -44,7 +45,8 @@ public class Glossy implements Material
     @Override
     public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn)
     {
-        Vector3f halfVector = computeHalfVector(wOut, wIn);
+        Vector3f halfVector = Scratch.get().v0;
+        computeHalfVector(wOut, wIn, halfVector);
         Vector3f normal = hitRecord.normal;
         float e = this.roughness;
 
@@ -74,9 +76,10 @@ public class Glossy implements Material
         brdf.mult(d * g / cosTerms);
 
         // Add diffuse term
-        Spectrum diff = diffuse.evaluateBRDF(hitRecord, wOut, wIn);
-        diff.mult(new Spectrum(1 - f_r, 1 - f_g, 1 - f_b));
-        brdf.add(diff);
+        Spectrum kd = diffuse.kd;
+        brdf.r += kd.r * (1 - f_r);
+        brdf.g += kd.g * (1 - f_g);
+        brdf.b += kd.b * (1 - f_b);
 
         return brdf;
     }
@@ -118,7 +121,7 @@ public class Glossy implements Material
         float phi = (float) (2 * Math.PI * sample[1]);
         float cosTheta = (float) Math.pow(sample[0], 1 / (roughness + 1));
         float sinTheta = (float) Math.sqrt(1 - cosTheta * cosTheta);
-        Vector3f halfVector = new Vector3f();
+        Vector3f halfVector = Scratch.get().v1;
         halfVector.x = (float) (Math.cos(phi) * sinTheta);
         halfVector.y = (float) (Math.sin(phi) * sinTheta);
         halfVector.z = cosTheta;
@@ -127,7 +130,8 @@ public class Glossy implements Material
         hitRecord.toTangentSpace(halfVector);
 
         // Direction of incident light
-        Vector3f incident = StaticVecmath.reflect(hitRecord.w, halfVector);
+        Vector3f incident = new Vector3f();
+        ScalarVecmath.reflect(hitRecord.w, halfVector, incident);
 
         // PDF of sampled half vector
         float p_h = (float) ((roughness + 1) * Math.pow(cosTheta, roughness)/ (2 * Math.PI));
@@ -168,12 +172,10 @@ public class Glossy implements Material
         throw new UnsupportedOperationException();
     }
 
-    private Vector3f computeHalfVector(Vector3f wOut, Vector3f wIn)
+    private void computeHalfVector(Vector3f wOut, Vector3f wIn, Vector3f halfVector)
     {
-        Vector3f halfVector = new Vector3f(wIn);
-        halfVector.add(wOut);
+        halfVector.add(wIn, wOut);
         halfVector.normalize();
-        return halfVector;
     }
 
     private float fresnel_reflectance(float eta, float k, float cosi)
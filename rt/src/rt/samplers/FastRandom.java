@@ -0,0 +1,78 @@
+package rt.samplers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fast pseudo-random number generator based on xoroshiro128+. Unlike {@link java.util.Random},
+ * it is not synchronized and its state is just two longs, so an instance must not be shared
+ * between threads.
+ */
+public class FastRandom {
+
+	private static final AtomicLong seedUniquifier = new AtomicLong(0x5DEECE66DL);
+
+	private long s0, s1;
+
+	/**
+	 * Makes a generator with a seed that is very likely to be distinct from
+	 * the seed of any other generator.
+	 */
+	public FastRandom()
+	{
+		this(seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
+	}
+
+	/**
+	 * Makes a generator that always produces the same sequence for the same @param seed.
+	 */
+	public FastRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	/**
+	 * Resets the state. The two state words are derived from @param seed with
+	 * SplitMix64, which never makes them both zero.
+	 */
+	public void setSeed(long seed)
+	{
+		s0 = mix(seed += 0x9E3779B97F4A7C15L);
+		s1 = mix(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	public long nextLong()
+	{
+		long a = s0;
+		long b = s1;
+		long result = a + b;
+
+		b ^= a;
+		s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+		s1 = Long.rotateLeft(b, 37);
+		return result;
+	}
+
+	/**
+	 * Returns a uniformly distributed float in the range [0,1). Only the upper 24 bits
+	 * are used, because the lowest bits of xoroshiro128+ are of lower quality.
+	 */
+	public float nextFloat()
+	{
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * Returns a uniformly distributed int in the range [0, @param bound).
+	 */
+	public int nextInt(int bound)
+	{
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
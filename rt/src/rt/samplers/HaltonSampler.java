@@ -0,0 +1,47 @@
+package rt.samplers;
+
+/**
+ * Makes samples from the Halton sequence, whose dimension i is the radical inverse of the 
+ * sample index in the base of the i-th prime number. Every pixel uses the sequence from its 
+ * first sample on, shifted by a random offset per pixel and dimension (a Cranley-Patterson 
+ * rotation), so that neighboring pixels are not correlated. The offsets are derived from the 
+ * pixel coordinates, so the samples do not depend on the order of rendering.
+ * <p>
+ * The higher dimensions of the Halton sequence are poorly distributed for small numbers of 
+ * samples, so dimensions beyond the number of tabulated primes are drawn pseudo-randomly.
+ */
+public class HaltonSampler extends PixelSampler {
+
+	private static final int[] PRIMES = {
+		2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53,
+		59, 61, 67, 71, 73, 79, 83, 89, 97, 101, 103, 107, 109, 113, 127, 131
+	};
+
+	protected float sample(int index, int dimension)
+	{
+		if(dimension >= PRIMES.length)
+			return toFloat(hash(dimension, index));
+
+		float v = radicalInverse(PRIMES[dimension], index) + toFloat(hash(dimension, -1));
+		if(v >= 1)
+			v -= 1;
+		return Math.min(v, ONE_MINUS_EPSILON);
+	}
+
+	/**
+	 * Mirrors the digits of @param index in the given @param base at the decimal point.
+	 */
+	static float radicalInverse(int base, int index)
+	{
+		double inverseBase = 1.0 / base;
+		double factor = inverseBase;
+		double result = 0;
+		while(index > 0)
+		{
+			result += (index % base) * factor;
+			index /= base;
+			factor *= inverseBase;
+		}
+		return (float) result;
+	}
+}
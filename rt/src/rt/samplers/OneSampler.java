@@ -21,4 +21,37 @@ public class OneSampler implements Sampler {
 		
 		return samples;
 	}
+
+	public float nextFloat()
+	{
+		return 0.5f;
+	}
+
+	public void next2D(float[] sample)
+	{
+		sample[0] = 0.5f;
+		sample[1] = 0.5f;
+	}
+
+	/**
+	 * The samples do not depend on the pixel.
+	 */
+	public void startPixel(int x, int y, int firstSample)
+	{
+	}
+
+	public void startSample(int index)
+	{
+	}
+
+	public void resumePixel(int x, int y, int firstSample, float[][] samples)
+	{
+	}
+
+	/**
+	 * The samples are always the same.
+	 */
+	public void setSeed(long seed)
+	{
+	}
 }
@@ -0,0 +1,138 @@
+package rt.samplers;
+
+import rt.Sampler;
+
+/**
+ * Base class of samplers whose samples are a function of the pixel, the index of the sample
+ * in the pixel and the dimension. The samples of a pixel are therefore the same no matter
+ * which thread renders the pixel and in which order the pixels are rendered.
+ * <p>
+ * The dimensions returned by {@link #makeSamples(int, int)} come first, and the dimensions
+ * drawn with {@link #nextFloat()} and {@link #next2D(float[])} after {@link #startSample(int)}
+ * continue from there. Subclasses only need to compute single values or pairs of values.
+ */
+public abstract class PixelSampler implements Sampler {
+
+	/**
+	 * The largest float below one.
+	 */
+	protected static final float ONE_MINUS_EPSILON = 0x1.fffffep-1f;
+
+	protected int pixelX, pixelY;
+	protected int firstSample;
+
+	/**
+	 * The number of samples returned by the last call to makeSamples.
+	 */
+	protected int count = 1;
+
+	private int seed;
+	private int pixelDimensions;
+	private int index;
+	private int dimension;
+
+	public void startPixel(int x, int y, int firstSample)
+	{
+		this.pixelX = x;
+		this.pixelY = y;
+		this.firstSample = firstSample;
+		this.index = firstSample;
+		this.dimension = 0;
+		this.pixelDimensions = 0;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = (int) (seed ^ (seed >>> 32));
+	}
+
+	public void resumePixel(int x, int y, int firstSample, float[][] samples)
+	{
+		startPixel(x, y, firstSample);
+		count = samples.length;
+		pixelDimensions = samples.length > 0 ? samples[0].length : 0;
+	}
+
+	public float[][] makeSamples(int n, int d)
+	{
+		count = n;
+		pixelDimensions = d;
+
+		float[][] samples = new float[n][d];
+		float[] pair = new float[2];
+		for(int i=0; i<n; i++)
+		{
+			for(int j=0; j+1<d; j+=2)
+			{
+				sample2D(firstSample + i, j, pair);
+				samples[i][j] = pair[0];
+				samples[i][j+1] = pair[1];
+			}
+			if(d % 2 == 1)
+				samples[i][d-1] = sample(firstSample + i, d-1);
+		}
+		return samples;
+	}
+
+	public void startSample(int index)
+	{
+		this.index = firstSample + index;
+		this.dimension = pixelDimensions;
+	}
+
+	public float nextFloat()
+	{
+		return sample(index, dimension++);
+	}
+
+	public void next2D(float[] sample)
+	{
+		sample2D(index, dimension, sample);
+		dimension += 2;
+	}
+
+	/**
+	 * Returns dimension @param dimension of the sample with index @param index 
+	 * of the current pixel.
+	 */
+	protected abstract float sample(int index, int dimension);
+
+	/**
+	 * Stores the dimensions @param dimension and @param dimension + 1 of the sample 
+	 * with index @param index of the current pixel in @param sample.
+	 */
+	protected void sample2D(int index, int dimension, float[] sample)
+	{
+		sample[0] = sample(index, dimension);
+		sample[1] = sample(index, dimension + 1);
+	}
+
+	/**
+	 * Returns a well mixed hash of the seed, the current pixel and @param a and @param b.
+	 */
+	protected int hash(int a, int b)
+	{
+		return mix(mix(mix(mix((pixelX * 0x9e3779b9 + 0x7f4a7c15) ^ seed) ^ pixelY) ^ a) ^ b);
+	}
+
+	/**
+	 * Returns a float in [0,1) computed from a hash.
+	 */
+	protected static float toFloat(int hash)
+	{
+		return (hash >>> 8) * 0x1.0p-24f;
+	}
+
+	/**
+	 * A 32-bit integer hash with good avalanche behavior.
+	 */
+	protected static int mix(int x)
+	{
+		x ^= x >>> 16;
+		x *= 0x21f0aaad;
+		x ^= x >>> 15;
+		x *= 0xd35a2d97;
+		x ^= x >>> 15;
+		return x;
+	}
+}
@@ -1,19 +1,32 @@
 package rt.samplers;
 
-import java.util.Random;
-
 import rt.Sampler;
 
 /**
  * Makes uniform random samples in the range [0,1].
+ * <p>
+ * By default, the samples are drawn from one random sequence, so they depend on the 
+ * pixels rendered before by the same sampler. After {@link #setSeed(long)}, the 
+ * generator is reseeded for every pixel and sample from a hash of the seed, the pixel 
+ * and the sample index instead, which makes the samples reproducible.
  */
 public class RandomSampler implements Sampler {
 
-	Random random;
+	FastRandom random;
+
+	private boolean counterBased;
+	private long seed;
+	private long pixelKey;
+	private int firstSample;
 	
 	public RandomSampler()
 	{
-		random = new Random();
+		random = new FastRandom();
+	}
+	
+	public RandomSampler(long seed)
+	{
+		random = new FastRandom(seed);
 	}
 	
 	/**
@@ -34,5 +47,51 @@ public class RandomSampler implements Sampler {
 		}
 		return samples;
 	}
-	
+
+	public float nextFloat()
+	{
+		return random.nextFloat();
+	}
+
+	public void next2D(float[] sample)
+	{
+		sample[0] = random.nextFloat();
+		sample[1] = random.nextFloat();
+	}
+
+	/**
+	 * The samples only depend on the pixel after {@link #setSeed(long)}.
+	 */
+	public void startPixel(int x, int y, int firstSample)
+	{
+		if(counterBased)
+		{
+			pixelKey = FastRandom.mix(seed ^ FastRandom.mix(((long) y << 32) | (x & 0xffffffffL)));
+			this.firstSample = firstSample;
+			// The samples returned by makeSamples get a stream of their own, whose 
+			// offset is negative unlike the offsets of the streams along the paths
+			random.setSeed(FastRandom.mix(pixelKey + ~firstSample));
+		}
+	}
+
+	/**
+	 * The paths continue with the current random sequence, unless the samples only depend 
+	 * on the pixel.
+	 */
+	public void resumePixel(int x, int y, int firstSample, float[][] samples)
+	{
+		startPixel(x, y, firstSample);
+	}
+
+	public void startSample(int index)
+	{
+		if(counterBased)
+			random.setSeed(FastRandom.mix(pixelKey + firstSample + index));
+	}
+
+	public void setSeed(long seed)
+	{
+		this.counterBased = true;
+		this.seed = seed;
+	}
 }
@@ -0,0 +1,60 @@
+package rt.samplers;
+
+/**
+ * Makes samples from the first two dimensions of the Sobol sequence with nested uniform 
+ * (Owen) scrambling, following Burley, "Practical Hash-based Owen Scrambling", 2020.
+ * <p>
+ * Every pair of dimensions is a 2D Sobol point set scrambled with a different seed, and the 
+ * order of the samples is shuffled with a different seed per pair, so that the pairs are 
+ * not correlated with each other. The seeds are derived from the pixel coordinates, so the 
+ * samples do not depend on the order of rendering. The samples of every pair are well 
+ * distributed in 2D, and scrambling keeps this property for any number of samples that is 
+ * a power of two.
+ */
+public class SobolSampler extends PixelSampler {
+
+	protected float sample(int index, int dimension)
+	{
+		int seed = hash(dimension, 0x5bd1e995);
+		int i = nestedUniformScramble(index, seed);
+		return toFloat(nestedUniformScramble(Integer.reverse(i), mix(seed ^ 1)));
+	}
+
+	protected void sample2D(int index, int dimension, float[] sample)
+	{
+		int seed = hash(dimension, 0x1b873593);
+		int i = nestedUniformScramble(index, seed);
+		sample[0] = toFloat(nestedUniformScramble(Integer.reverse(i), mix(seed ^ 1)));
+		sample[1] = toFloat(nestedUniformScramble(sobol1(i), mix(seed ^ 2)));
+	}
+
+	/**
+	 * Returns the second dimension of the Sobol sequence as a 32-bit fixed point number.
+	 * Its direction numbers follow from the primitive polynomial x + 1.
+	 */
+	static int sobol1(int index)
+	{
+		int result = 0;
+		for(int v = 1 << 31; index != 0; index >>>= 1, v ^= v >>> 1)
+		{
+			if((index & 1) != 0)
+				result ^= v;
+		}
+		return result;
+	}
+
+	/**
+	 * Randomly permutes the binary digits of the fixed point number @param x, such that 
+	 * every digit is flipped depending on all the digits before it.
+	 */
+	static int nestedUniformScramble(int x, int seed)
+	{
+		x = Integer.reverse(x);
+		x += seed;
+		x ^= x * 0x6c50b47c;
+		x ^= x * 0xb82f1e52;
+		x ^= x * 0xc7afe638;
+		x ^= x * 0x8d22f6e6;
+		return Integer.reverse(x);
+	}
+}
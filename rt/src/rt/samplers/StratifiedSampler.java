@@ -0,0 +1,75 @@
+package rt.samplers;
+
+/**
+ * Makes jittered stratified samples. The samples of a pixel made by one call to makeSamples 
+ * are stratified in every dimension: For n samples, the range [0,1] is divided into n strata, 
+ * each sample lies in a different stratum, and it is placed randomly within the stratum. If n 
+ * is a square, pairs of dimensions are stratified on a sqrt(n) by sqrt(n) grid instead. The 
+ * strata are assigned to the samples by a different pseudo-random permutation per dimension, 
+ * so that the dimensions are not correlated.
+ * <p>
+ * The dimensions along the light paths are stratified the same way, so stratification is 
+ * only effective if the integrator draws the same dimensions for all samples of a pixel.
+ */
+public class StratifiedSampler extends PixelSampler {
+
+	protected float sample(int index, int dimension)
+	{
+		int stratum = permute(index - firstSample, count, hash(dimension, ~firstSample));
+		float jitter = toFloat(hash(dimension, index));
+		return Math.min((stratum + jitter) / count, ONE_MINUS_EPSILON);
+	}
+
+	protected void sample2D(int index, int dimension, float[] sample)
+	{
+		int m = (int) Math.round(Math.sqrt(count));
+		if(m * m != count)
+		{
+			super.sample2D(index, dimension, sample);
+			return;
+		}
+
+		int cell = permute(index - firstSample, count, hash(dimension, ~firstSample));
+		sample[0] = Math.min((cell % m + toFloat(hash(dimension, index))) / m, ONE_MINUS_EPSILON);
+		sample[1] = Math.min((cell / m + toFloat(hash(dimension + 1, index))) / m, ONE_MINUS_EPSILON);
+	}
+
+	/**
+	 * Returns the position of @param i in a pseudo-random permutation of 0, ..., @param n - 1 
+	 * selected by @param seed, following Kensler, "Correlated Multi-Jittered Sampling", 2013.
+	 */
+	static int permute(int i, int n, int seed)
+	{
+		if(n <= 1)
+			return 0;
+
+		int w = n - 1;
+		w |= w >>> 1;
+		w |= w >>> 2;
+		w |= w >>> 4;
+		w |= w >>> 8;
+		w |= w >>> 16;
+		do
+		{
+			i ^= seed;
+			i *= 0xe170893d;
+			i ^= seed >>> 16;
+			i ^= (i & w) >>> 4;
+			i ^= seed >>> 8;
+			i *= 0x0929eb3f;
+			i ^= seed >>> 23;
+			i ^= (i & w) >>> 1;
+			i *= 1 | seed >>> 27;
+			i *= 0x6935fa69;
+			i ^= (i & w) >>> 11;
+			i *= 0x74dcb303;
+			i ^= (i & w) >>> 2;
+			i *= 0x9e501cc3;
+			i ^= (i & w) >>> 2;
+			i *= 0xc860a3df;
+			i &= w;
+			i ^= i >>> 5;
+		} while(i >= n);
+		return (int) ((i + (seed & 0xffffffffL)) % n);
+	}
+}
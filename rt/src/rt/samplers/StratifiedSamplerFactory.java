@@ -0,0 +1,15 @@
+package rt.samplers;
+
+import rt.Sampler;
+import rt.SamplerFactory;
+
+/**
+ * Makes a {@link StratifiedSampler}.
+ */
+public class StratifiedSamplerFactory implements SamplerFactory {
+
+	public Sampler make() {
+		return new StratifiedSampler();
+	}
+
+}
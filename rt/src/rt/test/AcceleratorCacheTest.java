@@ -0,0 +1,130 @@
+package rt.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rt.HitRecord;
+import rt.Ray;
+import rt.bsp.AcceleratorCache;
+import rt.bsp.BSPAccelerator;
+import rt.bsp.SplitMethod;
+import rt.intersectables.Mesh;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AcceleratorCacheTest
+{
+
+    private static final String FILE = "../obj/teapot.obj";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedTreeFindsSameHits() throws IOException
+    {
+        AcceleratorCache cache = new AcceleratorCache(folder.getRoot());
+        BSPAccelerator built = cache.read(FILE, 1.f, SplitMethod.SAH);
+        assertEquals(1, folder.getRoot().listFiles().length);
+
+        BSPAccelerator loaded = cache.read(FILE, 1.f, SplitMethod.SAH);
+        assertNotSame(built, loaded);
+
+        Mesh builtMesh = (Mesh) built.getObjects();
+        Mesh loadedMesh = (Mesh) loaded.getObjects();
+        assertArrayEquals(builtMesh.vertices, loadedMesh.vertices, 0);
+        assertArrayEquals(builtMesh.indices, loadedMesh.indices);
+        assertSameHits(built, loaded);
+    }
+
+    @Test
+    public void testParametersAreCachedSeparately() throws IOException
+    {
+        AcceleratorCache cache = new AcceleratorCache(folder.getRoot());
+        cache.read(FILE, 1.f, SplitMethod.SAH);
+        cache.read(FILE, 2.f, SplitMethod.SAH);
+        cache.read(FILE, 1.f, SplitMethod.MEAN);
+        assertEquals(3, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testCorruptFileIsRebuilt() throws IOException
+    {
+        AcceleratorCache cache = new AcceleratorCache(folder.getRoot());
+        BSPAccelerator built = cache.read(FILE, 1.f, SplitMethod.SAH);
+
+        File cacheFile = folder.getRoot().listFiles()[0];
+        byte[] garbage = new byte[100];
+        Arrays.fill(garbage, (byte) 7);
+        try (FileOutputStream out = new FileOutputStream(cacheFile))
+        {
+            out.write(garbage);
+        }
+
+        BSPAccelerator rebuilt = cache.read(FILE, 1.f, SplitMethod.SAH);
+        assertSameHits(built, rebuilt);
+        assertTrue(cacheFile.length() > garbage.length);
+    }
+
+    @Test
+    public void testCorruptNodeIsRebuilt() throws IOException
+    {
+        AcceleratorCache cache = new AcceleratorCache(folder.getRoot());
+        BSPAccelerator built = cache.read(FILE, 1.f, SplitMethod.SAH);
+
+        // Let the root node refer to itself as its child above the split plane
+        File cacheFile = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw"))
+        {
+            ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(8 + 32);
+            for (int i = 0; i < 4; i++)
+            {   // Vertices, normals, texture coordinates and indices of the mesh
+                int length = buffer.getInt();
+                buffer.position(buffer.position() + 4 * length);
+            }
+            // Split method, maximum depth, maximum number of objects, root bounds and number of node entries
+            buffer.position(buffer.position() + 4 * (3 + 6 + 1));
+            assertTrue(buffer.getInt(buffer.position() + 4) < 0);
+            buffer.putInt(buffer.position(), 0);
+        }
+
+        BSPAccelerator rebuilt = cache.read(FILE, 1.f, SplitMethod.SAH);
+        assertSameHits(built, rebuilt);
+    }
+
+    private void assertSameHits(BSPAccelerator expected, BSPAccelerator actual)
+    {
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++)
+        {
+            Point3f origin = new Point3f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, 3);
+            Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1);
+
+            HitRecord e = expected.intersect(new Ray(origin, direction));
+            HitRecord a = actual.intersect(new Ray(origin, direction));
+            if (e == null)
+            {
+                assertNull(a);
+            }
+            else
+            {
+                assertNotNull(a);
+                assertEquals(e.t, a.t, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.*;
+import rt.cameras.PinholeCamera;
+import rt.films.VarianceFilm;
+import rt.samplers.RandomSamplerFactory;
+
+import javax.vecmath.Vector3f;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplingTest
+{
+
+    private static final float EPS = 0.0001f;
+
+    @Test
+    public void testVarianceOfKnownSamples()
+    {
+        VarianceFilm film = new VarianceFilm(2, 1);
+        for (float l : new float[] { 1, 2, 3, 4 })
+        {
+            film.addSample(0.5, 0.5, new Spectrum(l, l, l));
+        }
+        film.addSample(1.5, 0.5, new Spectrum(3, 3, 3));
+
+        assertEquals(4, film.getSampleCount(0, 0), 0);
+        assertEquals(2.5f, film.getMean(0, 0), EPS);
+        assertEquals(5 / 3.f, film.getVariance(0, 0), EPS);
+
+        // Standard error of the mean sqrt(5/3 / 4) in relation to the mean, or to the minimum luminance if larger
+        float standardError = (float) Math.sqrt(5 / 3. / 4);
+        assertEquals(standardError / 2.5f, film.getRelativeError(0, 0, 1), EPS);
+        assertEquals(standardError / 10, film.getRelativeError(0, 0, 10), EPS);
+
+        // A single sample does not give an estimate of the variance
+        assertEquals(3, film.getMean(1, 0), EPS);
+        assertEquals(Float.POSITIVE_INFINITY, film.getVariance(1, 0), 0);
+        assertEquals(Float.POSITIVE_INFINITY, film.getRelativeError(1, 0, 1), 0);
+    }
+
+    @Test
+    public void testConstantSamplesHaveNoVariance()
+    {
+        VarianceFilm film = new VarianceFilm(1, 1);
+        for (int i = 0; i < 10; i++)
+        {
+            film.addSample(0.5, 0.5, new Spectrum(0.7f, 0.7f, 0.7f));
+        }
+        assertEquals(0, film.getVariance(0, 0), EPS);
+        assertEquals(0, film.getRelativeError(0, 0, 0.05f), EPS);
+    }
+
+    @Test
+    public void testBudgetIsRespected() throws InterruptedException, ExecutionException
+    {
+        NoiseScene scene = new NoiseScene(16, 16, 12);
+        RecordingScheduler scheduler = new RecordingScheduler(scene);
+        AdaptiveRenderer renderer = new AdaptiveRenderer(scene, scheduler, (VarianceFilm) scene.getFilm());
+        renderer.setInitialSPP(2);
+        renderer.setSamplesPerPass(3);
+        renderer.setMaxSamplesPerPixelPerPass(5);
+        // Never converged, so that the whole budget is used
+        renderer.setThreshold(0);
+        try
+        {
+            renderer.render();
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+
+        long budget = 12L * 16 * 16;
+        assertTrue(scheduler.passes > 1);
+        assertTrue(scheduler.maxPixelSamples <= 5);
+        assertEquals(budget, scheduler.samples);
+        assertEquals(budget, renderer.getRenderedSamples());
+
+        VarianceFilm film = (VarianceFilm) scene.getFilm();
+        long filmSamples = 0;
+        for (int j = 0; j < 16; j++)
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                filmSamples += (long) film.getSampleCount(i, j);
+            }
+        }
+        assertEquals(budget, filmSamples);
+    }
+
+    @Test
+    public void testConvergedImageStopsEarly() throws InterruptedException, ExecutionException
+    {
+        NoiseScene scene = new NoiseScene(8, 8, 64);
+        RecordingScheduler scheduler = new RecordingScheduler(scene);
+        AdaptiveRenderer renderer = new AdaptiveRenderer(scene, scheduler, (VarianceFilm) scene.getFilm());
+        renderer.setThreshold(Float.MAX_VALUE);
+        try
+        {
+            renderer.render();
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+        assertEquals(0, scheduler.passes);
+        assertTrue(renderer.getRenderedSamples() < 64L * 8 * 8);
+    }
+
+    /**
+     * Counts the samples of the adaptive passes.
+     */
+    private static class RecordingScheduler extends TileScheduler
+    {
+        private final int numPixels;
+        int passes;
+        long samples;
+        int maxPixelSamples;
+
+        RecordingScheduler(Scene scene)
+        {
+            super(scene, 4, TileOrder.ROW_MAJOR, 1);
+            numPixels = scene.getFilm().getWidth() * scene.getFilm().getHeight();
+        }
+
+        @Override
+        public ForkJoinTask<Void> start(int spp)
+        {
+            samples += (long) spp * numPixels;
+            return super.start(spp);
+        }
+
+        @Override
+        public ForkJoinTask<Void> start(int[] spp)
+        {
+            passes++;
+            for (int n : spp)
+            {
+                samples += n;
+                maxPixelSamples = Math.max(maxPixelSamples, n);
+            }
+            return super.start(spp);
+        }
+    }
+
+    /**
+     * A scene whose pixels are random values, with more noise in the left half of the image.
+     */
+    private static class NoiseScene extends Scene
+    {
+        NoiseScene(int width, int height, int spp)
+        {
+            SPP = spp;
+            this.width = width;
+            this.height = height;
+            camera = new PinholeCamera(new Vector3f(0, 0, 3), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), 60, 1, width, height);
+            film = new VarianceFilm(width, height);
+            samplerFactory = new RandomSamplerFactory();
+            integratorFactory = new IntegratorFactory()
+            {
+                @Override
+                public Integrator make(Scene scene)
+                {
+                    return new NoiseIntegrator();
+                }
+
+                @Override
+                public void prepareScene(Scene scene)
+                {
+                }
+            };
+        }
+    }
+
+    private static class NoiseIntegrator implements Integrator
+    {
+        private Sampler sampler;
+
+        @Override
+        public Spectrum integrate(Ray r)
+        {
+            float amplitude = r.direction.x < 0 ? 4 : 1;
+            float value = 1 + amplitude * sampler.nextFloat();
+            return new Spectrum(value, value, value);
+        }
+
+        @Override
+        public float[][] makePixelSamples(Sampler sampler, int n)
+        {
+            this.sampler = sampler;
+            return sampler.makeSamples(n, 2);
+        }
+    }
+}
@@ -2,8 +2,28 @@ package rt.test;
 
 import org.junit.Before;
 import org.junit.Test;
+import rt.HitRecord;
+import rt.ObjReader;
+import rt.Intersectable;
+import rt.Ray;
+import rt.RayPacket;
 import rt.bsp.Axis;
 import rt.bsp.AABoundingBox;
+import rt.bsp.BSPAccelerator;
+import rt.bsp.BVHAccelerator;
+import rt.bsp.SplitMethod;
+import rt.intersectables.Instance;
+import rt.intersectables.IntersectableList;
+import rt.intersectables.Mesh;
+import rt.intersectables.Sphere;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -13,9 +33,18 @@ public class BSPAccelerationTest
 
     private static final float EPS = 0.0001f;
 
+    private IntersectableList spheres;
+
     @Before
     public void setUp()
     {
+        Random random = new Random(42);
+        spheres = new IntersectableList();
+        for (int i = 0; i < 200; i++)
+        {
+            Point3f center = new Point3f(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+            spheres.add(new Sphere(center, 0.1f + random.nextFloat() * 0.4f));
+        }
     }
 
     @Test
@@ -63,4 +92,228 @@ public class BSPAccelerationTest
         assertEquals(-0.5f, left.xmax(), EPS);
         assertEquals(0, right.xmax(), EPS);
     }
+
+    @Test
+    public void testSAHTreeFindsClosestHit()
+    {
+        BSPAccelerator accelerator = new BSPAccelerator(spheres, SplitMethod.SAH);
+        accelerator.construct();
+        assertSameHitsAsList(accelerator);
+    }
+
+    @Test
+    public void testMeanTreeFindsClosestHit()
+    {
+        BSPAccelerator accelerator = new BSPAccelerator(spheres);
+        accelerator.construct();
+        assertSameHitsAsList(accelerator);
+    }
+
+    @Test
+    public void testBVHFindsClosestHit()
+    {
+        BVHAccelerator accelerator = new BVHAccelerator(spheres);
+        accelerator.construct();
+        assertSameHitsAsList(accelerator);
+    }
+
+    @Test
+    public void testNestedTreesFindClosestHit()
+    {
+        BSPAccelerator inner = new BSPAccelerator(spheres, SplitMethod.SAH);
+        inner.construct();
+
+        // Instances of the inner tree side by side, referenced by an outer tree
+        IntersectableList instances = new IntersectableList();
+        for (int i = 0; i < 4; i++)
+        {
+            Matrix4f t = new Matrix4f();
+            t.setIdentity();
+            t.setTranslation(new Vector3f(4 * i - 6, 0, 0));
+            instances.add(new Instance(inner, t));
+        }
+        BSPAccelerator outer = new BSPAccelerator(instances, SplitMethod.SAH);
+        outer.construct();
+
+        assertSameHitsAs(instances, outer);
+    }
+
+    @Test
+    public void testParallelConstructionFindsClosestHit()
+    {
+        // Enough objects that the upper levels of the trees are built in parallel
+        Random random = new Random(3);
+        IntersectableList many = new IntersectableList();
+        for (int i = 0; i < 5000; i++)
+        {
+            Point3f center = new Point3f(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+            many.add(new Sphere(center, 0.02f + random.nextFloat() * 0.1f));
+        }
+
+        BSPAccelerator tree = new BSPAccelerator(many, SplitMethod.SAH);
+        tree.construct();
+        assertSameHitsAs(many, tree);
+
+        BVHAccelerator bvh = new BVHAccelerator(many);
+        bvh.construct();
+        assertSameHitsAs(many, bvh);
+    }
+
+    @Test
+    public void testParallelConstructionMatchesSequentialConstruction() throws ReflectiveOperationException
+    {
+        // More objects than ParallelBuild.PARTITION_CUTOFF, so that the objects of the top nodes are also
+        // evaluated and partitioned in parallel
+        Random random = new Random(5);
+        IntersectableList many = new IntersectableList();
+        for (int i = 0; i < 40000; i++)
+        {
+            Point3f center = new Point3f(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+            many.add(new Sphere(center, 0.01f + random.nextFloat() * 0.02f));
+        }
+
+        BSPAccelerator parallelTree = new BSPAccelerator(many, SplitMethod.SAH);
+        parallelTree.construct();
+        BSPAccelerator sequentialTree = new BSPAccelerator(many, SplitMethod.SAH);
+        sequentialTree.setParallelBuild(false);
+        sequentialTree.construct();
+        assertSameFields(sequentialTree, parallelTree, "nodeData", "nodeSplits", "leafObjects", "rootBounds");
+        assertSameHitsAs(many, parallelTree);
+
+        BVHAccelerator parallelBVH = new BVHAccelerator(many);
+        parallelBVH.construct();
+        BVHAccelerator sequentialBVH = new BVHAccelerator(many);
+        sequentialBVH.setParallelBuild(false);
+        sequentialBVH.construct();
+        assertSameFields(sequentialBVH, parallelBVH, "nodeData", "nodeBounds", "primitives");
+        assertSameHitsAs(many, parallelBVH);
+    }
+
+    @Test
+    public void testOcclusionMatchesClosestHit() throws IOException
+    {
+        BSPAccelerator tree = new BSPAccelerator(spheres, SplitMethod.SAH);
+        tree.construct();
+        BVHAccelerator bvh = new BVHAccelerator(spheres);
+        bvh.construct();
+
+        Mesh teapot = ObjReader.read("../obj/teapot.obj", 4.f);
+        BSPAccelerator teapotTree = new BSPAccelerator(teapot, SplitMethod.SAH);
+        teapotTree.construct();
+        Matrix4f t = new Matrix4f();
+        t.setIdentity();
+        t.setTranslation(new Vector3f(1, 0, 2));
+        Instance teapotInstance = new Instance(teapotTree, t);
+
+        for (Intersectable intersectable : new Intersectable[] { spheres, tree, bvh, teapot, teapotInstance })
+        {
+            Random random = new Random(11);
+            for (int i = 0; i < 1000; i++)
+            {
+                Point3f origin = new Point3f(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, 15);
+                Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1);
+                float tmax = random.nextFloat() * 30;
+
+                HitRecord hit = intersectable.intersect(new Ray(origin, direction));
+                boolean expected = hit != null && hit.t < tmax;
+                assertEquals(expected, intersectable.isOccluded(new Ray(origin, direction, 0, tmax)));
+            }
+        }
+    }
+
+    @Test
+    public void testPacketsMatchSingleRays() throws IOException
+    {
+        BSPAccelerator tree = new BSPAccelerator(spheres, SplitMethod.SAH);
+        tree.construct();
+        Mesh teapot = ObjReader.read("../obj/teapot.obj", 4.f);
+        BSPAccelerator teapotTree = new BSPAccelerator(teapot, SplitMethod.SAH);
+        teapotTree.construct();
+
+        Random random = new Random(13);
+        RayPacket packet = new RayPacket();
+        for (BSPAccelerator accelerator : new BSPAccelerator[] { tree, teapotTree })
+        {
+            for (int i = 0; i < 200; i++)
+            {
+                // Packets of rays through a small part of the scene, and packets of unrelated rays
+                float spread = i % 4 == 0 ? 1 : 0.05f;
+                Point3f origin = new Point3f(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, 15);
+                Vector3f center = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1);
+                packet.clear();
+                while (!packet.isFull())
+                {
+                    Vector3f direction = new Vector3f(center.x + (random.nextFloat() - 0.5f) * spread,
+                            center.y + (random.nextFloat() - 0.5f) * spread, -1);
+                    packet.add(new Ray(origin, direction, 0, random.nextFloat() * 30));
+                }
+                Ray[] rays = new Ray[packet.size];
+                for (int k = 0; k < packet.size; k++)
+                {
+                    rays[k] = new Ray(origin, new Vector3f());
+                    packet.getRay(k, rays[k]);
+                }
+
+                accelerator.intersect(packet);
+                for (int k = 0; k < packet.size; k++)
+                {
+                    Ray r = rays[k];
+                    HitRecord expected = accelerator.intersect(r);
+                    if (expected == null)
+                    {
+                        assertNull(packet.hits[k]);
+                    }
+                    else
+                    {
+                        assertNotNull(packet.hits[k]);
+                        assertEquals(expected.t, packet.hits[k].t, 0);
+                        assertEquals(expected.t, packet.tmax[k], 0);
+                        assertEquals(expected.normal, packet.hits[k].normal);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the arrays in the private fields {@param names} of two objects of the same class.
+     */
+    private static void assertSameFields(Object expected, Object actual, String... names) throws ReflectiveOperationException
+    {
+        for (String name : names)
+        {
+            Field field = expected.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            Object a = field.get(expected), b = field.get(actual);
+            assertTrue(name, Arrays.deepEquals(new Object[] { a }, new Object[] { b }));
+        }
+    }
+
+    private void assertSameHitsAsList(Intersectable accelerator)
+    {
+        assertSameHitsAs(spheres, accelerator);
+    }
+
+    private void assertSameHitsAs(Intersectable reference, Intersectable accelerator)
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++)
+        {
+            Point3f origin = new Point3f(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, 15);
+            Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1);
+
+            HitRecord expected = reference.intersect(new Ray(origin, direction));
+            HitRecord actual = accelerator.intersect(new Ray(origin, direction));
+
+            if (expected == null)
+            {
+                assertNull(actual);
+            }
+            else
+            {
+                assertNotNull(actual);
+                assertEquals(expected.t, actual.t, EPS);
+            }
+        }
+    }
 }
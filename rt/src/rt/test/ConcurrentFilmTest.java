@@ -0,0 +1,94 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.Film;
+import rt.Spectrum;
+import rt.films.ConcurrentBoxFilterFilm;
+import rt.films.LightImage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentFilmTest
+{
+
+    private static final int THREADS = 4;
+    private static final int SAMPLES_PER_THREAD = 20000;
+
+    @Test
+    public void testNoSampleIsLostOnTheSamePixel() throws InterruptedException
+    {
+        ConcurrentBoxFilterFilm film = new ConcurrentBoxFilterFilm(2, 2);
+
+        // Every thread adds 1 and 3 alternately to pixel (1, 0), so the average is exactly 2
+        splat(film, 1.5, 0.5);
+
+        Spectrum s = film.getImage()[1][0];
+        assertEquals(2, s.r, 0);
+        assertEquals(2, s.g, 0);
+        assertEquals(2, s.b, 0);
+        assertEquals(0, film.getImage()[0][1].r, 0);
+    }
+
+    @Test
+    public void testLightImageCountsEverySplat() throws InterruptedException
+    {
+        for (boolean deterministic : new boolean[] { false, true })
+        {
+            LightImage lightImage = new LightImage(2, 2, deterministic);
+
+            // A quarter of all splats goes to pixel (0, 1), the others leave the image
+            splat(lightImage, 0.5, 1.5);
+            splat(lightImage, -1, 0.5);
+            splat(lightImage, 0.5, 2);
+            splat(lightImage, 2, 0.5);
+
+            // The sum 2 * n / 4 is weighted by the 4 pixels over the n splats
+            Spectrum s = lightImage.getImage()[0][1];
+            assertEquals(2, s.r, 1e-5);
+            assertEquals(0, lightImage.getImage()[1][1].r, 0);
+        }
+    }
+
+    @Test
+    public void testFixedPointLightImageClampsSplats()
+    {
+        LightImage lightImage = new LightImage(1, 1, true);
+        lightImage.addSample(0.5, 0.5, new Spectrum(Float.POSITIVE_INFINITY, Float.NaN, 1e20f));
+        lightImage.addSample(0.5, 0.5, new Spectrum(1, 1, 1));
+
+        // Without clamping, the sums would have wrapped around to negative values
+        Spectrum s = lightImage.getImage()[0][0];
+        assertEquals((LightImage.MAX_SPLAT + 1) / 2, s.r, 0);
+        assertEquals(0.5f, s.g, 0);
+        assertEquals((LightImage.MAX_SPLAT + 1) / 2, s.b, 0);
+    }
+
+    private void splat(final Film film, final double x, final double y) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < SAMPLES_PER_THREAD; i++)
+                    {
+                        float v = i % 2 == 0 ? 1 : 3;
+                        film.addSample(x, y, new Spectrum(v, v, v));
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.Spectrum;
+import rt.films.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FilteredFilmTest
+{
+
+    private static final int WIDTH = 12, HEIGHT = 8, TILE_SIZE = 4;
+
+    @Test
+    public void testConstantImageIsReconstructed()
+    {
+        Filter[] filters = {new TriangleFilter(1.5f), new GaussianFilter(2, 2), new MitchellNetravaliFilter(2)};
+        for (Filter filter : filters)
+        {
+            FilteredFilm film = new FilteredFilm(WIDTH, HEIGHT, filter);
+            Random random = new Random(3);
+            for (int i = 0; i < 20 * WIDTH * HEIGHT; i++)
+            {
+                film.addSample(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT, new Spectrum(0.25f, 0.5f, 1));
+            }
+
+            Spectrum[][] image = film.getImage();
+            for (int x = 0; x < WIDTH; x++)
+            {
+                for (int y = 0; y < HEIGHT; y++)
+                {
+                    assertEquals(0.25f, image[x][y].r, 1e-5);
+                    assertEquals(0.5f, image[x][y].g, 1e-5);
+                    assertEquals(1, image[x][y].b, 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMergedTilesMatchDirectSamples()
+    {
+        Filter filter = new MitchellNetravaliFilter(2);
+        FilteredFilm direct = new FilteredFilm(WIDTH, HEIGHT, filter);
+        FilteredFilm tiled = new FilteredFilm(WIDTH, HEIGHT, filter);
+
+        Random random = new Random(7);
+        for (int bottom = 0; bottom < HEIGHT; bottom += TILE_SIZE)
+        {
+            for (int left = 0; left < WIDTH; left += TILE_SIZE)
+            {
+                FilmTile tile = tiled.makeTile(left, left + TILE_SIZE, bottom, bottom + TILE_SIZE);
+                for (int i = 0; i < 50; i++)
+                {
+                    float x = left + random.nextFloat() * TILE_SIZE;
+                    float y = bottom + random.nextFloat() * TILE_SIZE;
+                    Spectrum s = new Spectrum(random.nextFloat(), random.nextFloat(), random.nextFloat());
+                    tile.addSample(x, y, s);
+                    direct.addSample(x, y, s);
+                }
+                tiled.mergeTile(tile);
+            }
+        }
+
+        Spectrum[][] expected = direct.getImage();
+        Spectrum[][] actual = tiled.getImage();
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                assertEquals(expected[x][y].r, actual[x][y].r, 1e-5);
+                assertEquals(expected[x][y].g, actual[x][y].g, 1e-5);
+                assertEquals(expected[x][y].b, actual[x][y].b, 1e-5);
+            }
+        }
+    }
+}
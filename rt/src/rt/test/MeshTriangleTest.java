@@ -0,0 +1,98 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.HitRecord;
+import rt.PrimitiveHit;
+import rt.Ray;
+import rt.intersectables.Mesh;
+import rt.intersectables.MeshTriangle;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshTriangleTest
+{
+
+    /**
+     * The triangle (0,0,0), (1,0,0), (0,1,0) with texture coordinates equal to x and y.
+     */
+    private final Mesh mesh = new Mesh(new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0}, null,
+            new float[] {0, 0, 1, 0, 0, 1}, new int[] {0, 1, 2});
+    private final MeshTriangle triangle = (MeshTriangle) mesh.iterator().next();
+
+    @Test
+    public void testBarycentricCoordinatesOfHits()
+    {
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++)
+        {
+            float x = random.nextFloat() * 2 - 0.5f;
+            float y = random.nextFloat() * 2 - 0.5f;
+            Ray ray = new Ray(new Point3f(x, y, 2), new Vector3f(0, 0, -2));
+            PrimitiveHit hit = new PrimitiveHit();
+
+            boolean inside = x > 1e-5f && y > 1e-5f && x + y < 1 - 1e-5f;
+            boolean outside = x < -1e-5f || y < -1e-5f || x + y > 1 + 1e-5f;
+            if (inside)
+            {
+                assertTrue(triangle.intersect(ray, hit));
+                assertEquals(1, hit.t, 1e-6);
+                assertEquals(x, hit.u, 1e-6);
+                assertEquals(y, hit.v, 1e-6);
+                assertEquals(1, ray.tmax, 1e-6);
+
+                HitRecord record = triangle.makeHitRecord(ray, hit);
+                assertEquals(x, record.u, 1e-6);
+                assertEquals(y, record.v, 1e-6);
+                assertEquals(new Vector3f(0, 0, 1), record.normal);
+            }
+            else if (outside)
+            {
+                assertFalse(triangle.intersect(ray, hit));
+                assertFalse(triangle.isOccluded(ray));
+            }
+        }
+    }
+
+    @Test
+    public void testIntervalOfRay()
+    {
+        Ray parallel = new Ray(new Point3f(0.2f, 0.2f, 1), new Vector3f(1, 0, 0));
+        assertNull(triangle.intersect(parallel));
+
+        Ray behind = new Ray(new Point3f(0.2f, 0.2f, 1), new Vector3f(0, 0, 1));
+        assertNull(triangle.intersect(behind));
+
+        Ray tooShort = new Ray(new Point3f(0.2f, 0.2f, 1), new Vector3f(0, 0, -1), 0, 0.5f);
+        assertNull(triangle.intersect(tooShort));
+        assertFalse(triangle.isOccluded(tooShort));
+
+        Ray hit = new Ray(new Point3f(0.2f, 0.2f, 1), new Vector3f(0, 0, -1), 0, 2);
+        assertTrue(triangle.isOccluded(hit));
+        assertEquals(2, hit.tmax, 0);
+    }
+
+    @Test
+    public void testOcclusionDoesNotAllocate()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Ray ray = new Ray(new Point3f(0.2f, 0.2f, 1), new Vector3f(0, 0, -1), 0, 2);
+        boolean occluded = triangle.isOccluded(ray);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++)
+        {
+            occluded &= triangle.isOccluded(ray);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(occluded);
+        // Allows for the few bytes the measurement itself may allocate, but not for one object per test
+        assertTrue(allocated < 1000);
+    }
+}
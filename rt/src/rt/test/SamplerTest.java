@@ -0,0 +1,107 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.Sampler;
+import rt.samplers.HaltonSampler;
+import rt.samplers.RandomSampler;
+import rt.samplers.SobolSampler;
+import rt.samplers.StratifiedSampler;
+
+import static org.junit.Assert.*;
+
+public class SamplerTest
+{
+
+    private static final int N = 16;
+
+    @Test
+    public void testSamplesDependOnlyOnPixelAndIndex()
+    {
+        Sampler[] samplers = {new StratifiedSampler(), new HaltonSampler(), new SobolSampler()};
+        for (Sampler sampler : samplers)
+        {
+            sampler.startPixel(3, 5, 0);
+            float[][] expected = sampler.makeSamples(N, 2);
+            sampler.startSample(7);
+            float expectedPathSample = sampler.nextFloat();
+
+            // Rendering another pixel in between must not change anything
+            sampler.startPixel(4, 5, 0);
+            float[][] other = sampler.makeSamples(N, 2);
+            sampler.startPixel(3, 5, 0);
+            float[][] actual = sampler.makeSamples(N, 2);
+            sampler.startSample(7);
+
+            for (int i = 0; i < N; i++)
+            {
+                assertArrayEquals(expected[i], actual[i], 0);
+                assertInUnitInterval(actual[i][0]);
+                assertInUnitInterval(actual[i][1]);
+            }
+            assertEquals(expectedPathSample, sampler.nextFloat(), 0);
+            assertNotEquals(expected[0][0], other[0][0], 0);
+        }
+    }
+
+    @Test
+    public void testSeededSamplesAreReproducible()
+    {
+        // The second sampler of each pair renders another pixel before
+        Sampler[][] pairs = {{new RandomSampler(), new RandomSampler()}, {new HaltonSampler(), new HaltonSampler()}};
+        for (Sampler[] pair : pairs)
+        {
+            pair[0].setSeed(42);
+            pair[1].setSeed(42);
+            float[] expected = samplePath(pair[0], 3, 5, 8);
+            samplePath(pair[1], 4, 5, 0);
+            assertArrayEquals(expected, samplePath(pair[1], 3, 5, 8), 0);
+
+            pair[1].setSeed(43);
+            assertNotEquals(expected[0], samplePath(pair[1], 3, 5, 8)[0], 0);
+        }
+    }
+
+    @Test
+    public void testEveryStratumContainsOneSample()
+    {
+        Sampler[] samplers = {new StratifiedSampler(), new SobolSampler()};
+        for (Sampler sampler : samplers)
+        {
+            sampler.startPixel(1, 2, 0);
+            float[][] samples = sampler.makeSamples(N, 2);
+
+            // The pixel samples and the next pair along the paths on a 4x4 grid
+            float[] pair = new float[2];
+            int[] pixelStrata = new int[N];
+            int[] pathStrata = new int[N];
+            for (int i = 0; i < N; i++)
+            {
+                sampler.startSample(i);
+                sampler.next2D(pair);
+                pixelStrata[(int) (samples[i][0] * 4) + 4 * (int) (samples[i][1] * 4)]++;
+                pathStrata[(int) (pair[0] * 4) + 4 * (int) (pair[1] * 4)]++;
+            }
+            for (int i = 0; i < N; i++)
+            {
+                assertEquals(1, pixelStrata[i]);
+                assertEquals(1, pathStrata[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the first pixel sample of the pixel and the next two dimensions along its path.
+     */
+    private float[] samplePath(Sampler sampler, int x, int y, int firstSample)
+    {
+        sampler.startPixel(x, y, firstSample);
+        float[] pixelSample = sampler.makeSamples(N, 2)[0];
+        sampler.startSample(0);
+        return new float[] {pixelSample[0], pixelSample[1], sampler.nextFloat(), sampler.nextFloat()};
+    }
+
+    private void assertInUnitInterval(float x)
+    {
+        assertTrue(x >= 0 && x < 1);
+    }
+}
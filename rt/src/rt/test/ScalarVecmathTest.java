@@ -0,0 +1,103 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.ScalarVecmath;
+import rt.StaticVecmath;
+
+import javax.vecmath.Matrix3f;
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScalarVecmathTest
+{
+
+    private final Random random = new Random(3);
+
+    @Test
+    public void testTransformsMatchVecmath()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            Matrix4f m = new Matrix4f();
+            for (int row = 0; row < 3; row++)
+            {
+                for (int column = 0; column < 4; column++)
+                {
+                    m.setElement(row, column, random.nextFloat() * 2 - 1);
+                }
+            }
+            m.setElement(3, 3, 1);
+
+            Point3f p = randomPoint();
+            Point3f expectedPoint = new Point3f(p);
+            m.transform(expectedPoint);
+            ScalarVecmath.transformPoint(m, p, p);
+            assertEquals(expectedPoint, p);
+
+            Vector3f v = new Vector3f(randomPoint());
+            Vector3f expectedVector = new Vector3f(v);
+            m.transform(expectedVector);
+            ScalarVecmath.transformVector(m, v, v);
+            assertEquals(expectedVector, v);
+
+            Vector3f n = new Vector3f(randomPoint());
+            Matrix4f normalMatrix = new Matrix4f(m);
+            normalMatrix.transpose();
+            Vector3f expectedNormal = new Vector3f(n);
+            normalMatrix.transform(expectedNormal);
+            ScalarVecmath.transformNormal(m, n);
+            assertEquals(expectedNormal, n);
+        }
+    }
+
+    @Test
+    public void testFrameAndReflectionMatchVecmath()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            Vector3f t1 = new Vector3f(randomPoint());
+            Vector3f t2 = new Vector3f(randomPoint());
+            Vector3f n = new Vector3f(randomPoint());
+            n.normalize();
+
+            Vector3f v = new Vector3f(randomPoint());
+            Matrix3f m = new Matrix3f();
+            m.setColumn(0, t1);
+            m.setColumn(1, t2);
+            m.setColumn(2, n);
+            Vector3f expected = new Vector3f(v);
+            m.transform(expected);
+            ScalarVecmath.fromFrame(t1, t2, n, v);
+            assertEquals(expected, v);
+
+            Vector3f reflected = new Vector3f();
+            ScalarVecmath.reflect(t1, n, reflected);
+            assertEquals(StaticVecmath.reflect(t1, n), reflected);
+        }
+    }
+
+    @Test
+    public void testArrayOperations()
+    {
+        float[] a = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+
+        Vector3f cross = new Vector3f();
+        ScalarVecmath.cross(a, 0, 3, cross);
+        assertEquals(new Vector3f(0, 0, 1), cross);
+
+        Vector3f interpolated = new Vector3f();
+        ScalarVecmath.interpolate(a, 0, 3, 6, 0.5f, 0.25f, 0.25f, interpolated);
+        assertEquals(new Vector3f(0.5f, 0.25f, 0.25f), interpolated);
+        assertEquals(0.25f, ScalarVecmath.interpolate(a, 1, 4, 7, 0.5f, 0.25f, 0.25f), 0);
+        assertEquals(2, ScalarVecmath.dot(a, 3, new Vector3f(1, 2, 3)), 0);
+    }
+
+    private Point3f randomPoint()
+    {
+        return new Point3f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+    }
+}
@@ -0,0 +1,39 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.TileOrder;
+
+import static org.junit.Assert.*;
+
+public class TileOrderTest
+{
+
+    @Test
+    public void testEveryTileIsVisitedOnce()
+    {
+        for (TileOrder tileOrder : TileOrder.values())
+        {
+            int[] order = tileOrder.order(7, 3);
+            boolean[] visited = new boolean[7 * 3];
+            for (int index : order)
+            {
+                assertFalse(visited[index]);
+                visited[index] = true;
+            }
+            assertEquals(visited.length, order.length);
+        }
+    }
+
+    @Test
+    public void testConsecutiveHilbertTilesAreAdjacent()
+    {
+        int n = 16;
+        int[] order = TileOrder.HILBERT.order(n, n);
+        for (int k = 1; k < order.length; k++)
+        {
+            int dx = Math.abs(order[k] % n - order[k - 1] % n);
+            int dy = Math.abs(order[k] / n - order[k - 1] / n);
+            assertEquals(1, dx + dy);
+        }
+    }
+}
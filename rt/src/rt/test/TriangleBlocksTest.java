@@ -0,0 +1,135 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.Intersectable;
+import rt.PrimitiveHit;
+import rt.Ray;
+import rt.bsp.BSPAccelerator;
+import rt.intersectables.Mesh;
+import rt.intersectables.MeshTriangle;
+import rt.intersectables.TriangleBlocks;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TriangleBlocksTest
+{
+
+    private final Random random = new Random(5);
+
+    @Test
+    public void testBlocksMatchSingleTriangles()
+    {
+        int n = 37;
+        Mesh mesh = randomMesh(n);
+        MeshTriangle[] triangles = new MeshTriangle[n];
+        Iterator<Intersectable> it = mesh.iterator();
+        for (int i = 0; i < n; i++)
+        {
+            triangles[i] = (MeshTriangle) it.next();
+        }
+
+        for (int width : new int[] {1, 4, 8, 16})
+        {
+            TriangleBlocks blocks = new TriangleBlocks(width);
+            // A range that does not fill its last block, followed by the range that is tested
+            blocks.add(triangles, 3);
+            int start = blocks.add(triangles, n);
+            assertEquals(0, start % width);
+
+            for (int i = 0; i < 500; i++)
+            {
+                Point3f origin = randomPoint();
+                Vector3f direction = new Vector3f(randomPoint());
+                float tmax = random.nextBoolean() ? Float.POSITIVE_INFINITY : random.nextFloat() * 2;
+
+                Ray expectedRay = new Ray(origin, direction, 0, tmax);
+                PrimitiveHit expected = new PrimitiveHit();
+                boolean expectedHit = false;
+                for (MeshTriangle triangle : triangles)
+                {
+                    if (triangle.intersect(expectedRay, expected)) expectedHit = true;
+                }
+
+                Ray ray = new Ray(origin, direction, 0, tmax);
+                PrimitiveHit hit = new PrimitiveHit();
+                assertEquals(expectedHit, blocks.intersect(start, n, ray, hit));
+                assertEquals(expectedRay.tmax, ray.tmax, 0);
+                if (expectedHit)
+                {
+                    assertSame(expected.primitive, hit.primitive);
+                    assertEquals(expected.t, hit.t, 0);
+                    assertEquals(expected.u, hit.u, 0);
+                    assertEquals(expected.v, hit.v, 0);
+                }
+
+                Ray shadowRay = new Ray(origin, direction, 0, tmax);
+                assertEquals(expectedHit, blocks.isOccluded(start, n, shadowRay, new PrimitiveHit()));
+                assertEquals(expectedHit, mesh.isOccluded(shadowRay));
+                assertEquals(tmax, shadowRay.tmax, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testOcclusionDoesNotAllocate()
+    {
+        // Few enough tests that they are not compiled yet. The JIT may remove allocations that do not
+        // escape, so this only fails as long as the occlusion tests have not been compiled by other tests.
+        Mesh mesh = randomMesh(20);
+        BSPAccelerator tree = new BSPAccelerator(mesh);
+        tree.construct();
+        Ray[] rays = new Ray[200];
+        for (int i = 0; i < rays.length; i++)
+        {
+            rays[i] = new Ray(randomPoint(), new Vector3f(randomPoint()));
+        }
+        int hits = countOccluded(mesh, rays) + countOccluded(tree, rays);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int repeatedHits = countOccluded(mesh, rays) + countOccluded(tree, rays);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(hits > 0);
+        assertEquals(hits, repeatedHits);
+        // Allows for the few bytes the measurement itself may allocate, but not for one object per test
+        assertTrue(allocated < 1000);
+    }
+
+    private static int countOccluded(Intersectable object, Ray[] rays)
+    {
+        int n = 0;
+        for (Ray r : rays)
+        {
+            if (object.isOccluded(r)) n++;
+        }
+        return n;
+    }
+
+    private Mesh randomMesh(int n)
+    {
+        float[] vertices = new float[9 * n];
+        int[] indices = new int[3 * n];
+        for (int i = 0; i < 3 * n; i++)
+        {
+            Point3f p = randomPoint();
+            vertices[3 * i] = p.x;
+            vertices[3 * i + 1] = p.y;
+            vertices[3 * i + 2] = p.z;
+            indices[i] = i;
+        }
+        return new Mesh(vertices, null, null, indices);
+    }
+
+    private Point3f randomPoint()
+    {
+        return new Point3f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+    }
+}
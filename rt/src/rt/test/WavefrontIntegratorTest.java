@@ -0,0 +1,137 @@
+package rt.test;
+
+import org.junit.Test;
+import rt.*;
+import rt.integrators.PathTracingIntegratorFactory;
+import rt.integrators.WavefrontPathTracingIntegratorFactory;
+import rt.testscenes.PathtracingBoxSphere;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class WavefrontIntegratorTest
+{
+
+    /**
+     * Returns the same value for all dimensions, so that the paths do not depend on how many random
+     * numbers an integrator draws, and in which order.
+     */
+    private static class ConstantSampler implements Sampler
+    {
+        private final float value;
+
+        ConstantSampler(float value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public float[][] makeSamples(int n, int d)
+        {
+            float[][] samples = new float[n][d];
+            for (float[] sample : samples)
+            {
+                Arrays.fill(sample, value);
+            }
+            return samples;
+        }
+
+        @Override
+        public float nextFloat()
+        {
+            return value;
+        }
+
+        @Override
+        public void next2D(float[] sample)
+        {
+            sample[0] = value;
+            sample[1] = value;
+        }
+
+        @Override
+        public void startPixel(int x, int y, int firstSample) {}
+
+        @Override
+        public void startSample(int index) {}
+
+        @Override
+        public void resumePixel(int x, int y, int firstSample, float[][] samples) {}
+
+        @Override
+        public void setSeed(long seed) {}
+    }
+
+    @Test
+    public void testPathsMatchPathTracer()
+    {
+        Scene scene = new PathtracingBoxSphere();
+        Integrator reference = configure(new PathTracingIntegratorFactory()).make(scene);
+        WavefrontIntegrator wavefront = (WavefrontIntegrator) configure(new WavefrontPathTracingIntegratorFactory()).make(scene);
+
+        // Below the termination probability the paths end after the minimum depth, above at the maximum
+        for (float value : new float[]{0.3f, 0.7f})
+        {
+            Sampler sampler = new ConstantSampler(value);
+            reference.makePixelSamples(sampler, 1);
+            wavefront.makePixelSamples(sampler, 1);
+
+            Ray[] rays = makeRays(scene);
+            for (Ray r : rays)
+            {
+                wavefront.addPath(new Ray(new Point3f(r.origin), new Vector3f(r.direction)));
+            }
+            Spectrum[] colors = wavefront.tracePaths();
+
+            boolean lit = false;
+            for (int i = 0; i < rays.length; i++)
+            {
+                Spectrum expected = reference.integrate(rays[i]);
+                assertEquals(expected.r, colors[i].r, 1e-5f);
+                assertEquals(expected.g, colors[i].g, 1e-5f);
+                assertEquals(expected.b, colors[i].b, 1e-5f);
+                lit |= expected.r > 0;
+            }
+            assertTrue(lit);
+        }
+    }
+
+    @Test
+    public void testPoolIsReused()
+    {
+        Scene scene = new PathtracingBoxSphere();
+        WavefrontIntegrator wavefront = (WavefrontIntegrator) new WavefrontPathTracingIntegratorFactory().make(scene);
+        wavefront.makePixelSamples(new ConstantSampler(0.4f), 1);
+
+        Ray[] rays = makeRays(scene);
+        for (int i = 0; i < wavefront.getCapacity(); i++)
+        {
+            wavefront.addPath(rays[i % rays.length]);
+        }
+        float first = wavefront.tracePaths()[0].r;
+
+        wavefront.addPath(rays[0]);
+        assertEquals(first, wavefront.tracePaths()[0].r, 0);
+    }
+
+    private static PathTracingIntegratorFactory configure(PathTracingIntegratorFactory factory)
+    {
+        factory.setMinDepth(2);
+        factory.setMaxDepth(8);
+        factory.setShadowRayContributionThreshold(0);
+        return factory;
+    }
+
+    private static Ray[] makeRays(Scene scene)
+    {
+        Ray[] rays = new Ray[64];
+        for (int i = 0; i < rays.length; i++)
+        {
+            rays[i] = scene.getCamera().makeWorldSpaceRay(16 * (i % 8), 16 * (i / 8), new float[]{0.5f, 0.5f});
+        }
+        return rays;
+    }
+}
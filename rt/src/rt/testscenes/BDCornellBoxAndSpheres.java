@@ -1,5 +1,6 @@
 package rt.testscenes;
 
+import rt.Film;
 import rt.integrators.BDPathTracingIntegratorFactory;
 import rt.integrators.PathTracingIntegratorFactory;
 import rt.intersectables.IntersectableList;
@@ -48,6 +49,14 @@ public class BDCornellBoxAndSpheres extends CornellBoxAndSpheres
         }
     }
 
+    @Override
+    public Film getSnapshotFilm()
+    {
+        if(integratorFactory instanceof BDPathTracingIntegratorFactory)
+            return ((BDPathTracingIntegratorFactory) integratorFactory).withLightImage(film);
+        return film;
+    }
+
     @Override
     public void prepare()
     {
@@ -1,5 +1,6 @@
 package rt.testscenes;
 
+import rt.Film;
 import rt.LightList;
 import rt.Scene;
 import rt.Spectrum;
@@ -115,6 +116,14 @@ public class BDPathtracingBoxSphere extends Scene {
 		}
 	}
 
+	@Override
+	public Film getSnapshotFilm()
+	{
+		if(integratorFactory instanceof BDPathTracingIntegratorFactory)
+			return ((BDPathTracingIntegratorFactory) integratorFactory).withLightImage(film);
+		return film;
+	}
+
 	@Override
 	public void prepare()
 	{
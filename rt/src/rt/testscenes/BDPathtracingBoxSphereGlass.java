@@ -109,6 +109,14 @@ public class BDPathtracingBoxSphereGlass extends Scene {
 		}
 	}
 
+	@Override
+	public Film getSnapshotFilm()
+	{
+		if(integratorFactory instanceof BDPathTracingIntegratorFactory)
+			return ((BDPathTracingIntegratorFactory) integratorFactory).withLightImage(film);
+		return film;
+	}
+
 	@Override
 	public void prepare()
 	{
@@ -2,6 +2,7 @@ package rt.testscenes;
 
 import rt.*;
 import rt.bsp.BSPAccelerator;
+import rt.bsp.SplitMethod;
 import rt.cameras.PinholeCamera;
 import rt.films.BoxFilterFilm;
 import rt.integrators.WhittedIntegratorFactory;
@@ -79,10 +80,7 @@ public class BSPTeapotLand extends Scene {
 			return;
 		}
 
-		int nTriangles = mesh.count();
-		int maxTeapotDepth = (int) Math.ceil(8 + 1.3 * Math.log(nTriangles));
-
-		BSPAccelerator teapotAccelerator = new BSPAccelerator(mesh, 5, maxTeapotDepth);
+		BSPAccelerator teapotAccelerator = new BSPAccelerator(mesh, SplitMethod.SAH);
 		teapotAccelerator.construct();
 
 		// Holds all teapots
@@ -120,8 +118,7 @@ public class BSPTeapotLand extends Scene {
 		/*
 		 * One final accelerator for all teapot instances
 		 */
-		int teapotGridDepth = (int) Math.ceil(8 + 1.3 * Math.log(numX * numY));
-		BSPAccelerator allTeapots = new BSPAccelerator(teapots, 5, teapotGridDepth);
+		BSPAccelerator allTeapots = new BSPAccelerator(teapots, SplitMethod.SAH);
 		allTeapots.construct();
 
 		objects.add(allTeapots);
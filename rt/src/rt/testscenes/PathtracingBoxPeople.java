@@ -6,6 +6,7 @@ import javax.vecmath.*;
 
 import rt.*;
 import rt.intersectables.*;
+import rt.bsp.*;
 import rt.tonemappers.*;
 import rt.integrators.*;
 import rt.lightsources.*;
@@ -67,14 +68,13 @@ public class PathtracingBoxPeople extends Scene {
 		
 		// Add objects
 		Timer timer = new Timer();
-		Mesh mesh;
+		AcceleratorCache cache = new AcceleratorCache();
 		BSPAccelerator accelerator;
 		try
 		{
 			
-			mesh = ObjReader.read("../obj/fireman.obj", 1.f);
 			timer.reset();
-			accelerator = new BSPAccelerator(mesh);
+			accelerator = cache.read("../obj/fireman.obj", 1.f, SplitMethod.SAH);
 			System.out.printf("Accelerator computed in %d ms.\n", timer.timeElapsed());
 			
 			Matrix4f t = new Matrix4f();
@@ -91,9 +91,8 @@ public class PathtracingBoxPeople extends Scene {
 		try
 		{
 			
-			mesh = ObjReader.read("../obj/male.obj", 1.f);
 			timer.reset();
-			accelerator = new BSPAccelerator(mesh);
+			accelerator = cache.read("../obj/male.obj", 1.f, SplitMethod.SAH);
 			System.out.printf("Accelerator computed in %d ms.\n", timer.timeElapsed());
 			
 			Matrix4f t = new Matrix4f();
@@ -4,7 +4,7 @@ import rt.LightList;
 import rt.Scene;
 import rt.Spectrum;
 import rt.cameras.PinholeCamera;
-import rt.films.BoxFilterFilm;
+import rt.films.VarianceFilm;
 import rt.integrators.PathTracingIntegratorFactory;
 import rt.intersectables.IntersectableList;
 import rt.intersectables.Rectangle;
@@ -40,7 +40,7 @@ public class PathtracingBoxSphereGlass extends Scene {
 		int height = 512;
 		float aspect = (float)width/(float)height;
 		camera = new PinholeCamera(eye, lookAt, up, fov, aspect, width, height);
-		film = new BoxFilterFilm(width, height);						
+		film = new VarianceFilm(width, height);						
 		tonemapper = new ClampTonemapper();
 
 		int minDepth = 3;